@@ -0,0 +1,67 @@
+package org.folio.print.server.data;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.util.HexFormat;
+
+/**
+ * Hex representation of binary print content as used by the JSON API.
+ */
+public final class HexContent {
+
+  private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+  private HexContent() {
+  }
+
+  /**
+   * Encode binary content as upper case hex string.
+   * @param content binary content
+   * @return hex string
+   */
+  public static String encode(byte[] content) {
+    return HEX.formatHex(content);
+  }
+
+  /**
+   * Decode hex string to binary content.
+   * @param hex hex string
+   * @return binary content
+   * @throws IllegalArgumentException if not a valid hex string
+   */
+  public static byte[] decode(String hex) {
+    return HEX.parseHex(hex);
+  }
+
+  public static class Serializer extends StdSerializer<byte[]> {
+    public Serializer() {
+      super(byte[].class);
+    }
+
+    @Override
+    public void serialize(byte[] value, JsonGenerator gen, SerializerProvider provider)
+        throws IOException {
+      gen.writeString(encode(value));
+    }
+  }
+
+  public static class Deserializer extends StdDeserializer<byte[]> {
+    public Deserializer() {
+      super(byte[].class);
+    }
+
+    @Override
+    public byte[] deserialize(JsonParser parser, DeserializationContext ctx) throws IOException {
+      try {
+        return decode(parser.getValueAsString());
+      } catch (IllegalArgumentException e) {
+        throw ctx.weirdStringException(parser.getValueAsString(), byte[].class, e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package org.folio.print.server.data;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Page ranges of the entries merged into a BATCH entry, in page order.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageIndex {
+  private int pageCount;
+  private List<PageRange> entries;
+}
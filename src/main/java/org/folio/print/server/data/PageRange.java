@@ -0,0 +1,26 @@
+package org.folio.print.server.data;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Pages of a BATCH entry that came from one SINGLE entry.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageRange {
+  private UUID id;
+  private String sortingField;
+  /**
+   * Number of first page, starting at 1.
+   */
+  private int firstPage;
+  private int pageCount;
+}
@@ -1,6 +1,9 @@
 package org.folio.print.server.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import java.time.ZonedDateTime;
 import java.util.UUID;
 import lombok.Getter;
@@ -19,5 +22,15 @@ public class PrintEntry {
 
   private String sortingField;
 
-  private String content;
+  private PrintEntryStatus status;
+
+  @JsonSerialize(using = HexContent.Serializer.class)
+  @JsonDeserialize(using = HexContent.Deserializer.class)
+  private byte[] content;
+
+  /**
+   * HTML the content was rendered from; null if the content was provided as PDF.
+   */
+  @JsonIgnore
+  private String source;
 }
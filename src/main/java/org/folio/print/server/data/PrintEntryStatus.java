@@ -0,0 +1,7 @@
+package org.folio.print.server.data;
+
+public enum PrintEntryStatus {
+  PENDING,
+  RENDERED,
+  FAILED;
+}
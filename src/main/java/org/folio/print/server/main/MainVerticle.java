@@ -13,7 +13,15 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.folio.okapi.common.Config;
 import org.folio.okapi.common.ModuleVersionReporter;
+import org.folio.print.server.service.BatchOptions;
+import org.folio.print.server.service.IngestOptions;
+import org.folio.print.server.service.MailOptions;
+import org.folio.print.server.service.PdfService;
 import org.folio.print.server.service.PrintService;
+import org.folio.print.server.service.RenderCache;
+import org.folio.print.server.service.RenderCacheOptions;
+import org.folio.print.server.service.RenderExecutor;
+import org.folio.print.server.service.RenderStatsApi;
 import org.folio.tlib.RouterCreator;
 import org.folio.tlib.api.HealthApi;
 import org.folio.tlib.api.Tenant2Api;
@@ -22,6 +30,10 @@ import org.folio.tlib.postgres.TenantPgPool;
 public class MainVerticle extends AbstractVerticle {
   final Logger log = LogManager.getLogger(MainVerticle.class);
 
+  private RenderExecutor renderExecutor;
+
+  private RenderExecutor batchExecutor;
+
   @Override
   public void start(Promise<Void> promise) {
     TenantPgPool.setModule("mod-batch-print");
@@ -30,13 +42,30 @@ public class MainVerticle extends AbstractVerticle {
     final int port = Integer.parseInt(
         Config.getSysConf("http.port", "port", "8081", config()));
     log.info("Listening on port {}", port);
+    final int renderThreads = Integer.parseInt(
+        Config.getSysConf("render.threads", "renderThreads", "2", config()));
+    final int renderQueue = Integer.parseInt(
+        Config.getSysConf("render.queue", "renderQueue", "100", config()));
+    log.info("Render threads {}, render queue {}", renderThreads, renderQueue);
+    renderExecutor = new RenderExecutor(renderThreads, renderQueue, PdfService::warmUp);
+    final int batchThreads = Integer.parseInt(
+        Config.getSysConf("batch.threads", "batchThreads", "1", config()));
+    final int batchQueue = Integer.parseInt(
+        Config.getSysConf("batch.queue", "batchQueue", "100", config()));
+    log.info("Batch threads {}, batch queue {}", batchThreads, batchQueue);
+    batchExecutor = new RenderExecutor(batchThreads, batchQueue);
+    RenderCache renderCache = new RenderCache(renderExecutor,
+        RenderCacheOptions.fromConfig(config()));
 
-    var printServiceService = new PrintService();
+    var printServiceService = new PrintService(renderExecutor, batchExecutor,
+        BatchOptions.fromConfig(config()), IngestOptions.fromConfig(config()),
+        MailOptions.fromConfig(config()), renderCache);
 
     RouterCreator[] routerCreators = {
         printServiceService,
         new Tenant2Api(printServiceService),
-        new HealthApi()
+        new HealthApi(),
+        new RenderStatsApi(renderExecutor, renderCache)
     };
 
     RouterCreator.mountAll(vertx, routerCreators, "mod-batch-print")
@@ -65,6 +94,12 @@ public class MainVerticle extends AbstractVerticle {
 
   @Override
   public void stop(Promise<Void> promise) {
+    if (renderExecutor != null) {
+      renderExecutor.close();
+    }
+    if (batchExecutor != null) {
+      batchExecutor.close();
+    }
     TenantPgPool.closeAll()
         .onComplete(promise);
   }
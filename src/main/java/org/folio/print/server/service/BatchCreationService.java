@@ -1,57 +1,252 @@
 package org.folio.print.server.service;
 
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.sqlclient.SqlConnection;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.pdfbox.util.Hex;
+import org.folio.okapi.common.HttpResponse;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.print.server.data.PrintEntry;
+import org.folio.print.server.data.PrintEntryStatus;
 import org.folio.print.server.data.PrintEntryType;
 import org.folio.print.server.storage.PrintStorage;
+import org.folio.print.server.storage.StorageRegistry;
 
 public class BatchCreationService {
   private static final Logger LOGGER = LogManager.getLogger(BatchCreationService.class);
-  private static final int MAX_COUNT_IN_BATCH = 1000;
 
-  private BatchCreationService() {
+  private final RenderExecutor renderExecutor;
+
+  private final BatchOptions options;
+
+  private final StorageRegistry storageRegistry;
+
+  private final PendingRenderer pendingRenderer;
+
+  private final PdfLinearizer linearizer;
+
+  private final RenderCache renderCache;
+
+  /**
+   * Construct batch creation service.
+   * @param renderExecutor executor for merging PDF files; not the one mail is rendered on
+   * @param options batch size settings
+   * @param storageRegistry storage of tenants
+   * @param pendingRenderer renderer for entries that are not rendered yet
+   * @param renderCache render cache, whose expired documents are deleted by each run
+   */
+  BatchCreationService(RenderExecutor renderExecutor, BatchOptions options,
+      StorageRegistry storageRegistry, PendingRenderer pendingRenderer,
+      RenderCache renderCache) {
+    this.renderExecutor = renderExecutor;
+    this.options = options;
+    this.storageRegistry = storageRegistry;
+    this.pendingRenderer = pendingRenderer;
+    this.linearizer = options.qpdf() == null ? null : new PdfLinearizer(options.qpdf());
+    this.renderCache = renderCache;
   }
 
   /**
    * Process batch creation request.
+   *
+   * <p>Responds when the run has completed: 200 with the number of batches created and
+   * the entries left out if it succeeded, an error otherwise.
    * @param ctx Batch creation request context
+   * @return async result
    */
-  public static void process(RoutingContext ctx) {
+  public Future<Void> process(RoutingContext ctx) {
     String tenant = ctx.request().getHeader(XOkapiHeaders.TENANT);
-    PrintStorage printStorage = new PrintStorage(ctx.vertx(), tenant);
-    LocalDateTime localDateTime = LocalDateTime.now().minusDays(1).minusMinutes(5);
-    LOGGER.info("process:: tenant {}, from {}", tenant, localDateTime);
-
-    printStorage.getEntriesByQuery("type=\"SINGLE\" and created > " + localDateTime
-                    + " sortby sortingField created", 0, MAX_COUNT_IN_BATCH)
-            .onSuccess(l -> processListAndSaveResult(l, printStorage))
-            .onFailure(e -> LOGGER.error("Failed to create print batch", e));
-    ctx.response().setStatusCode(204);
-    ctx.response().end();
+    return createBatches(ctx.vertx(), tenant)
+        .map(result -> {
+          HttpResponse.responseJson(ctx, 200).end(result.encode());
+          return null;
+        });
   }
 
-  private static void processListAndSaveResult(List<PrintEntry> entries, PrintStorage storage) {
-    LOGGER.info("processListAndSaveResult:: {} entries will be processed", entries.size());
-    if (!entries.isEmpty()) {
-      byte[] merged = PdfService.combinePdfFiles(entries);
+  /**
+   * Turn SINGLE entries of the last day into BATCH entries.
+   *
+   * <p>Entries of the window still waiting to be rendered are rendered first, including
+   * entries leased by another renderer or waiting for a retry. Entries that cannot be
+   * rendered, and entries whose content is not a valid PDF document, are left out and
+   * reported in the result, as they will not be in the window of the next run.
+   *
+   * <p>Each BATCH entry gets a page index with the pages of the entries merged into it.
+   *
+   * <p>The run is one transaction: entries are selected with row locks, BATCH entries
+   * are inserted and the consumed SINGLE entries deleted, then the transaction commits.
+   * If anything fails, nothing is changed and the run can be repeated.
+   * @param vertx Vert.x handle
+   * @param tenant tenant
+   * @return async result with number of BATCH entries created, {@code batches}, and entries
+   *     left out, {@code skipped}, with id, status and error
+   */
+  public Future<JsonObject> createBatches(Vertx vertx, String tenant) {
+    PrintStorage printStorage = storageRegistry.get(vertx, tenant);
+    LocalDateTime to = LocalDateTime.now(ZoneOffset.UTC);
+    LocalDateTime from = to.minusDays(1).minusMinutes(5);
+    LOGGER.info("createBatches:: tenant {}, from {}", tenant, from);
+
+    BatchRun batchRun = new BatchRun(vertx, printStorage, from, to);
+    return pendingRenderer.renderPending(vertx, tenant, from, to)
+        .onSuccess(rendered -> LOGGER.info("createBatches:: tenant {}, {} pending entries"
+            + " rendered", tenant, rendered))
+        .recover(e -> {
+          LOGGER.warn("createBatches:: rendering pending entries failed", e);
+          return Future.succeededFuture();
+        })
+        .compose(x -> renderCache.prune(printStorage)
+            .onSuccess(pruned -> LOGGER.info("createBatches:: tenant {}, {} cached documents"
+                + " expired", tenant, pruned))
+            .recover(e -> {
+              LOGGER.warn("createBatches:: pruning render cache failed", e);
+              return Future.succeededFuture();
+            }))
+        .compose(x -> batchRun.run())
+        .compose(batches -> printStorage.getUnrenderedEntries(from, to)
+            .map(unrendered -> {
+              JsonArray skipped = new JsonArray(unrendered);
+              batchRun.invalid.forEach(id -> skipped.add(new JsonObject()
+                  .put("id", id.toString())
+                  .put("status", PrintEntryStatus.RENDERED.toString())
+                  .put("error", "Content is not a valid PDF document")));
+              LOGGER.info("createBatches:: tenant {}, {} batches created", tenant, batches);
+              if (!skipped.isEmpty()) {
+                LOGGER.error("createBatches:: tenant {}, {} entries left out: {}", tenant,
+                    skipped.size(), skipped.encode());
+              }
+              return new JsonObject().put("batches", batches).put("skipped", skipped);
+            }))
+        .onFailure(e -> LOGGER.error("Failed to create print batch", e));
+  }
+
+  /**
+   * One batch creation run: streams all SINGLE entries of the window through a cursor
+   * and turns them into one or more BATCH entries, all on one connection.
+   */
+  private class BatchRun {
+    private final Vertx vertx;
+    private final PrintStorage storage;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private SqlConnection connection;
+    private BatchMerger merger;
+    private List<UUID> consumed = new ArrayList<>();
+    private final List<UUID> invalid = new ArrayList<>();
+    private int batches;
+
+    BatchRun(Vertx vertx, PrintStorage storage, LocalDateTime from, LocalDateTime to) {
+      this.vertx = vertx;
+      this.storage = storage;
+      this.from = from;
+      this.to = to;
+    }
+
+    Future<Integer> run() {
+      return storage.getConnection()
+          .compose(conn -> {
+            connection = conn;
+            return conn.begin()
+                .compose(tx -> storage.streamBatchEntries(conn, from, to, options.fetchSize(),
+                        this::addEntry)
+                    .compose(x -> flush())
+                    .compose(x -> deleteConsumed())
+                    .compose(x -> tx.commit())
+                    .onFailure(e -> tx.rollback()))
+                .eventually(x -> conn.close());
+          })
+          .eventually(x -> closeMerger(merger))
+          .map(x -> batches);
+    }
+
+    private Future<Void> addEntry(PrintEntry entry) {
+      return renderExecutor.submit(vertx, () -> {
+        if (merger == null) {
+          merger = new BatchMerger(options.mergeMemory(), options.maxPages() > 0);
+        }
+        if (options.singlePass()) {
+          merger.addHtml(entry.getId(), entry.getSortingField(), entry.getSource(),
+              entry.getContent());
+        } else {
+          merger.add(entry.getId(), entry.getSortingField(), entry.getContent());
+        }
+        return options.isFull(merger.getEntryCount(), merger.getPageCount());
+      }).compose(full -> {
+        takeResults(merger);
+        Future<Void> f = consumed.size() >= options.fetchSize()
+            ? deleteConsumed() : Future.succeededFuture();
+        return Boolean.TRUE.equals(full) ? f.compose(x -> flush()) : f;
+      });
+    }
+
+    /**
+     * Move the entries the merger has consumed or found invalid since the last call to this
+     * run; entries of an HTML run are only known once the run is rendered.
+     */
+    private void takeResults(BatchMerger batchMerger) {
+      consumed.addAll(batchMerger.takeConsumed());
+      invalid.addAll(batchMerger.takeInvalid());
+    }
+
+    private Future<Void> deleteConsumed() {
+      List<UUID> ids = consumed;
+      consumed = new ArrayList<>();
+      return storage.deleteEntries(connection, ids);
+    }
+
+    private Future<Void> flush() {
+      if (merger == null || merger.isEmpty()) {
+        return Future.succeededFuture();
+      }
+      BatchMerger current = merger;
+      merger = null;
+      if (!current.hasDocuments()) {
+        return closeMerger(current);
+      }
       PrintEntry batch = new PrintEntry();
       batch.setId(UUID.randomUUID());
       batch.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
       batch.setType(PrintEntryType.BATCH);
-      batch.setContent(Hex.getString(merged));
-      storage.createEntry(batch);
-      List<UUID> ids = entries.stream().map(PrintEntry::getId).toList();
-      storage.deleteEntries(ids);
+      LOGGER.info("flush:: batch {} with {} entries, {} pages", batch.getId(),
+          current.getEntryCount(), current.getPageCount());
+      return renderExecutor.submit(vertx, () -> {
+        Path merged = current.merge();
+        return linearizer == null || merged == null ? merged : linearizer.linearize(merged);
+      })
+          .compose(path -> {
+            takeResults(current);
+            if (path == null) {
+              return Future.succeededFuture();
+            }
+            return vertx.fileSystem().open(path.toString(), new OpenOptions().setRead(true))
+                .compose(file -> storage.createEntry(connection, batch, file,
+                        current.getPageIndex())
+                    .eventually(x -> file.close()))
+                .onSuccess(x -> batches++);
+          })
+          .eventually(x -> closeMerger(current));
+    }
+
+    private Future<Void> closeMerger(BatchMerger batchMerger) {
+      if (batchMerger == null) {
+        return Future.succeededFuture();
+      }
+      return vertx.executeBlocking(promise -> {
+        batchMerger.close();
+        promise.complete();
+      });
     }
   }
 }
@@ -0,0 +1,378 @@
+package org.folio.print.server.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionGoTo;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.destination.PDPageDestination;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+import org.folio.print.server.data.PageIndex;
+import org.folio.print.server.data.PageRange;
+
+/**
+ * Collects PDF documents for one batch in scratch files and merges them.
+ *
+ * <p>Content is kept on disk only, and PDFBox buffers are backed by scratch files too,
+ * so memory use does not grow with the size of the batch.
+ *
+ * <p>Entries added with their HTML are collected in runs of up to
+ * {@value #HTML_RUN_SIZE} and each run is rendered as one document, so its fonts and
+ * resources are in the batch once instead of once per entry. Only the current run is
+ * held in memory. This trades render time for size: every notice was rendered on its own
+ * already, so single-pass mode spends more render CPU than merging those documents.
+ *
+ * <p>The pages of each entry are recorded in a page index. The page where each entry of an
+ * HTML run starts is read from a bookmark the renderer writes for it; if that fails for
+ * any entry, the documents rendered one by one are used instead.
+ *
+ * <p>Until a run is rendered its page count is not known. If pages are counted for a page
+ * limit, the pages of the documents rendered one by one stand in for it.
+ */
+class BatchMerger implements Closeable {
+  private static final Logger LOGGER = LogManager.getLogger(BatchMerger.class);
+  private static final int HTML_RUN_SIZE = 100;
+
+  private final Path directory;
+  private final MemoryUsageSetting memoryUsageSetting;
+  private final boolean countRunPages;
+  private final List<Path> files = new ArrayList<>();
+  private final List<HtmlEntry> htmlRun = new ArrayList<>();
+  private final List<PageRange> pageRanges = new ArrayList<>();
+  private final List<UUID> consumed = new ArrayList<>();
+  private final List<UUID> invalid = new ArrayList<>();
+  private int entryCount;
+  private int pageCount;
+  private int runPages;
+
+  private record HtmlEntry(UUID id, String sortingField, String source, byte[] pdf) {
+  }
+
+  private record IndexedRun(byte[] pdf, List<PageRange> ranges) {
+  }
+
+  /**
+   * Create merger with its own scratch directory.
+   * @param mergeMemory main memory PDFBox may use before switching to scratch files;
+   *                    0 for scratch files only
+   * @throws IOException if scratch directory cannot be created
+   */
+  BatchMerger(long mergeMemory) throws IOException {
+    this(mergeMemory, false);
+  }
+
+  /**
+   * Create merger with its own scratch directory.
+   * @param mergeMemory main memory PDFBox may use before switching to scratch files;
+   *                    0 for scratch files only
+   * @param countRunPages whether {@link #getPageCount()} includes the pages of HTML
+   *                      entries not rendered yet, as rendered one by one
+   * @throws IOException if scratch directory cannot be created
+   */
+  BatchMerger(long mergeMemory, boolean countRunPages) throws IOException {
+    this.countRunPages = countRunPages;
+    directory = Files.createTempDirectory("batch-print");
+    memoryUsageSetting = mergeMemory > 0
+        ? MemoryUsageSetting.setupMixed(mergeMemory)
+        : MemoryUsageSetting.setupTempFileOnly();
+  }
+
+  /**
+   * Add document to batch.
+   *
+   * <p>Entries without content are consumed without adding pages. Entries that are not
+   * valid PDF documents are skipped and not consumed.
+   * @param id entry identifier
+   * @param sortingField sorting field of entry, for the page index
+   * @param pdf PDF document
+   * @return whether entry was consumed
+   * @throws IOException if the scratch file cannot be written
+   */
+  boolean add(UUID id, String sortingField, byte[] pdf) throws IOException {
+    renderHtmlRun();
+    if (pdf != null && pdf.length > 0 && !addDocument(id, sortingField, pdf)) {
+      invalid.add(id);
+      return false;
+    }
+    consumed.add(id);
+    entryCount++;
+    return true;
+  }
+
+  /**
+   * Add entry to batch by its HTML.
+   *
+   * <p>The entry is rendered together with the following entries added this way. If that
+   * fails, the documents rendered one by one are used instead. The entry is only
+   * consumed, or found invalid, once its run is rendered; see {@link #takeConsumed()}.
+   * @param id entry identifier
+   * @param sortingField sorting field of entry, for the page index
+   * @param source HTML of entry
+   * @param pdf PDF document rendered from source on its own
+   * @return whether entry was accepted; false if it was consumed at once and was invalid
+   * @throws IOException if the scratch file cannot be written
+   */
+  boolean addHtml(UUID id, String sortingField, String source, byte[] pdf)
+      throws IOException {
+    if (source == null || source.isBlank()) {
+      return add(id, sortingField, pdf);
+    }
+    htmlRun.add(new HtmlEntry(id, sortingField, source, pdf));
+    entryCount++;
+    if (countRunPages) {
+      runPages += countPages(pdf);
+    }
+    if (htmlRun.size() >= HTML_RUN_SIZE) {
+      renderHtmlRun();
+    }
+    return true;
+  }
+
+  private void renderHtmlRun() throws IOException {
+    if (htmlRun.isEmpty()) {
+      return;
+    }
+    List<HtmlEntry> run = List.copyOf(htmlRun);
+    htmlRun.clear();
+    runPages = 0;
+    byte[] pdf;
+    try {
+      pdf = PdfService.createPdfFileBookmarked(run.stream().map(HtmlEntry::source).toList());
+    } catch (RuntimeException e) {
+      LOGGER.warn("Failed to render {} entries in one pass", run.size(), e);
+      pdf = new byte[0];
+    }
+    IndexedRun indexed = pdf.length > 0 ? indexRun(run, pdf) : null;
+    if (indexed != null && writeDocument(run.get(0).id(), indexed.pdf()) >= 0) {
+      pageRanges.addAll(indexed.ranges());
+      run.forEach(entry -> consumed.add(entry.id()));
+      return;
+    }
+    for (HtmlEntry entry : run) {
+      if (entry.pdf() != null && entry.pdf().length > 0
+          && !addDocument(entry.id(), entry.sortingField(), entry.pdf())) {
+        invalid.add(entry.id());
+        entryCount--;
+      } else {
+        consumed.add(entry.id());
+      }
+    }
+  }
+
+  /**
+   * Page ranges of the entries of a run, read from the bookmarks of the document rendered
+   * for the run.
+   * @return document without bookmarks, and page ranges; null if the page where an entry
+   *     starts is not known
+   */
+  private IndexedRun indexRun(List<HtmlEntry> run, byte[] pdf) {
+    try (PDDocument document = PDDocument.load(pdf, MemoryUsageSetting.setupTempFileOnly());
+         ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+      int[] firstPages = firstPages(document, run.size());
+      int documentPages = document.getNumberOfPages();
+      List<PageRange> ranges = new ArrayList<>();
+      for (int i = 0; i < run.size(); i++) {
+        int end = i + 1 < run.size() ? firstPages[i + 1] : documentPages;
+        if (firstPages[i] < 0 || end <= firstPages[i] || (i == 0 && firstPages[i] != 0)) {
+          LOGGER.info("Page of entry {} not known; rendering apart", run.get(i).id());
+          return null;
+        }
+        HtmlEntry entry = run.get(i);
+        ranges.add(new PageRange(entry.id(), entry.sortingField(),
+            pageCount + 1 + firstPages[i], end - firstPages[i]));
+      }
+      document.getDocumentCatalog().setDocumentOutline(null);
+      document.save(os);
+      return new IndexedRun(os.toByteArray(), ranges);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to read pages of {} entries rendered in one pass", run.size(), e);
+      return null;
+    }
+  }
+
+  /**
+   * Page indexes, starting at 0, of the bookmarks titled 0 to count - 1.
+   * @return page index for each bookmark; -1 for missing bookmarks
+   */
+  private static int[] firstPages(PDDocument document, int count) throws IOException {
+    int[] firstPages = new int[count];
+    Arrays.fill(firstPages, -1);
+    PDDocumentOutline outline = document.getDocumentCatalog().getDocumentOutline();
+    if (outline == null) {
+      return firstPages;
+    }
+    for (PDOutlineItem item : outline.children()) {
+      int index;
+      try {
+        index = Integer.parseInt(item.getTitle());
+      } catch (NumberFormatException e) {
+        continue;
+      }
+      PDDestination destination = item.getDestination();
+      if (destination == null && item.getAction() instanceof PDActionGoTo goTo) {
+        destination = goTo.getDestination();
+      }
+      if (index >= 0 && index < count && destination instanceof PDPageDestination page) {
+        firstPages[index] = page.retrievePageNumber();
+      }
+    }
+    return firstPages;
+  }
+
+  /**
+   * Number of pages of a document.
+   * @return number of pages; 0 if pdf is empty or not a valid document
+   */
+  private static int countPages(byte[] pdf) {
+    if (pdf == null || pdf.length == 0) {
+      return 0;
+    }
+    try (PDDocument document = PDDocument.load(pdf, MemoryUsageSetting.setupTempFileOnly())) {
+      return document.getNumberOfPages();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private boolean addDocument(UUID id, String sortingField, byte[] pdf) throws IOException {
+    int firstPage = pageCount + 1;
+    int pages = writeDocument(id, pdf);
+    if (pages < 0) {
+      return false;
+    }
+    pageRanges.add(new PageRange(id, sortingField, firstPage, pages));
+    return true;
+  }
+
+  /**
+   * Write document to a scratch file.
+   * @return number of pages; -1 if pdf is not a valid document
+   */
+  private int writeDocument(UUID id, byte[] pdf) throws IOException {
+    Path file = directory.resolve(files.size() + ".pdf");
+    Files.write(file, pdf);
+    int pages;
+    try (PDDocument document = PDDocument.load(file.toFile(),
+        MemoryUsageSetting.setupTempFileOnly())) {
+      pages = document.getNumberOfPages();
+    } catch (IOException e) {
+      LOGGER.error("Failed to merge entry: " + id, e);
+      Files.delete(file);
+      return -1;
+    }
+    pageCount += pages;
+    files.add(file);
+    return pages;
+  }
+
+  /**
+   * Merge documents added so far.
+   *
+   * <p>Identical resource streams of the documents, such as fonts and logos, are written
+   * once in the merged document.
+   * @return file with merged document; null if no entry has pages
+   * @throws IOException if merging fails
+   */
+  Path merge() throws IOException {
+    renderHtmlRun();
+    if (files.isEmpty()) {
+      return null;
+    }
+    PDFMergerUtility merger = new PDFMergerUtility();
+    for (Path file : files) {
+      merger.addSource(file.toFile());
+    }
+    Path merged = directory.resolve("merged.pdf");
+    merger.setDestinationFileName(merged.toString());
+    merger.mergeDocuments(memoryUsageSetting);
+    Path result = directory.resolve("batch.pdf");
+    try (PDDocument document = PDDocument.load(merged.toFile(), memoryUsageSetting)) {
+      int shared = ResourceDeduplicator.deduplicate(document);
+      LOGGER.info("merge:: {} references to duplicate resource streams replaced", shared);
+      if (shared == 0) {
+        return merged;
+      }
+      document.save(result.toFile());
+    }
+    Files.delete(merged);
+    return result;
+  }
+
+  /**
+   * Get page index of the documents merged so far.
+   *
+   * <p>Complete once {@link #merge()} has been called.
+   * @return page index
+   */
+  PageIndex getPageIndex() {
+    return new PageIndex(pageCount, List.copyOf(pageRanges));
+  }
+
+  /**
+   * Entries consumed since the last call: merged, or without content.
+   * @return entry identifiers
+   */
+  List<UUID> takeConsumed() {
+    List<UUID> ids = List.copyOf(consumed);
+    consumed.clear();
+    return ids;
+  }
+
+  /**
+   * Entries found invalid since the last call; they are not in the batch.
+   * @return entry identifiers
+   */
+  List<UUID> takeInvalid() {
+    List<UUID> ids = List.copyOf(invalid);
+    invalid.clear();
+    return ids;
+  }
+
+  int getEntryCount() {
+    return entryCount;
+  }
+
+  /**
+   * Number of pages added so far.
+   *
+   * <p>Pages of HTML entries not rendered yet are only included if counted, and then are
+   * an estimate.
+   * @return number of pages
+   */
+  int getPageCount() {
+    return pageCount + runPages;
+  }
+
+  boolean isEmpty() {
+    return entryCount == 0;
+  }
+
+  boolean hasDocuments() {
+    return !files.isEmpty() || !htmlRun.isEmpty();
+  }
+
+  @Override
+  public void close() {
+    try (Stream<Path> paths = Files.list(directory)) {
+      for (Path path : paths.toList()) {
+        Files.deleteIfExists(path);
+      }
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to remove scratch directory {}", directory, e);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.json.JsonObject;
+import org.folio.okapi.common.Config;
+
+/**
+ * Batch creation settings.
+ *
+ * @param fetchSize number of entries read from storage at a time
+ * @param maxEntries maximum number of entries in one batch; 0 for no limit
+ * @param maxPages a batch is completed when it has this number of pages; 0 for no limit
+ * @param mergeMemory bytes of main memory PDFBox may use when merging before it switches
+ *                    to scratch files; 0 for scratch files only
+ * @param singlePass whether entries rendered from HTML are rendered again, together, instead
+ *                   of merging their documents
+ * @param qpdf qpdf command for linearizing batch documents; null for no linearization
+ */
+public record BatchOptions(int fetchSize, int maxEntries, int maxPages, long mergeMemory,
+    boolean singlePass, String qpdf) {
+
+  /**
+   * Batch options from system properties or verticle configuration.
+   * @param config verticle configuration
+   * @return batch options
+   */
+  public static BatchOptions fromConfig(JsonObject config) {
+    return new BatchOptions(
+        Integer.parseInt(Config.getSysConf("batch.fetchSize", "batchFetchSize", "100", config)),
+        Integer.parseInt(Config.getSysConf("batch.maxEntries", "batchMaxEntries", "0", config)),
+        Integer.parseInt(Config.getSysConf("batch.maxPages", "batchMaxPages", "0", config)),
+        Long.parseLong(Config.getSysConf("batch.mergeMemory", "batchMergeMemory", "16777216",
+            config)),
+        Boolean.parseBoolean(Config.getSysConf("batch.singlePass", "batchSinglePass", "false",
+            config)),
+        blankToNull(Config.getSysConf("batch.qpdf", "batchQpdf", "", config)));
+  }
+
+  private static String blankToNull(String value) {
+    return value == null || value.isBlank() ? null : value;
+  }
+
+  boolean isFull(int entries, int pages) {
+    return (maxEntries > 0 && entries >= maxEntries) || (maxPages > 0 && pages >= maxPages);
+  }
+}
@@ -0,0 +1,217 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.streams.ReadStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.print.server.data.PrintEntry;
+import org.folio.print.server.storage.PrintStorage;
+
+/**
+ * One bulk request: items are turned into entries and inserted in chunks.
+ *
+ * <p>The items of a chunk are converted concurrently, with a bounded number of
+ * conversions in flight, so renderings of a chunk overlap rather than run one after the
+ * other. Each chunk is then one transaction with one batch of inserts. The result has one item
+ * per input item, in input order, with status {@code created}, {@code exists} (the id
+ * is already in use) or {@code failed}.
+ */
+class BulkIngest {
+  private static final Logger LOGGER = LogManager.getLogger(BulkIngest.class);
+
+  static final String NDJSON = "application/x-ndjson";
+
+  private final PrintStorage storage;
+  private final int chunkSize;
+  private final int concurrency;
+  private final Function<JsonObject, Future<PrintEntry>> converter;
+  private final JsonArray results = new JsonArray();
+  private List<JsonObject> chunk = new ArrayList<>();
+  private List<Integer> positions = new ArrayList<>();
+  private Future<Void> pending = Future.succeededFuture();
+
+  /**
+   * Start bulk request.
+   * @param storage storage of tenant
+   * @param chunkSize number of entries per transaction
+   * @param concurrency maximum number of conversions in flight
+   * @param converter turns an item into an entry; fails for invalid items
+   */
+  BulkIngest(PrintStorage storage, int chunkSize, int concurrency,
+      Function<JsonObject, Future<PrintEntry>> converter) {
+    this.storage = storage;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.concurrency = Math.max(1, concurrency);
+    this.converter = converter;
+  }
+
+  /**
+   * Ingest all items of a JSON array.
+   * @param items the items
+   * @return async result with per item results
+   */
+  Future<JsonObject> ingest(JsonArray items) {
+    Promise<Void> promise = Promise.promise();
+    next(items, 0, promise);
+    return promise.future().compose(x -> finish());
+  }
+
+  private void next(JsonArray items, int start, Promise<Void> promise) {
+    for (int i = start; i < items.size(); i++) {
+      Object item = items.getValue(i);
+      Future<Void> f = item instanceof JsonObject json ? add(json) : addFailed("Not an object");
+      if (!f.isComplete()) {
+        int following = i + 1;
+        f.onComplete(x -> next(items, following, promise));
+        return;
+      }
+    }
+    promise.complete();
+  }
+
+  /**
+   * Ingest newline delimited JSON objects.
+   * @param stream request body; paused while entries are stored
+   * @param maxLineSize maximum length of one line
+   * @return async result with per item results
+   */
+  Future<JsonObject> ingest(ReadStream<Buffer> stream, int maxLineSize) {
+    Promise<Void> promise = Promise.promise();
+    RecordParser parser = RecordParser.newDelimited("\n", stream);
+    parser.maxRecordSize(maxLineSize);
+    parser.exceptionHandler(promise::tryFail);
+    parser.endHandler(x -> pending.onComplete(y -> promise.tryComplete()));
+    parser.handler(line -> {
+      String text = line.toString().trim();
+      if (text.isEmpty()) {
+        return;
+      }
+      Future<Void> f;
+      try {
+        f = add(new JsonObject(text));
+      } catch (DecodeException e) {
+        f = addFailed("Invalid JSON: " + e.getMessage());
+      }
+      pending = f;
+      if (!f.isComplete()) {
+        parser.pause();
+        f.onComplete(x -> parser.resume());
+      }
+    });
+    stream.resume();
+    return promise.future().compose(x -> finish());
+  }
+
+  private Future<Void> add(JsonObject item) {
+    positions.add(results.size());
+    results.addNull();
+    chunk.add(item);
+    return chunk.size() >= chunkSize ? flush() : Future.succeededFuture();
+  }
+
+  private Future<Void> addFailed(String message) {
+    results.add(failed(null, message));
+    return Future.succeededFuture();
+  }
+
+  private Future<Void> flush() {
+    List<JsonObject> items = chunk;
+    List<Integer> itemPositions = positions;
+    chunk = new ArrayList<>();
+    positions = new ArrayList<>();
+    if (items.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    List<Future<PrintEntry>> converted = new ArrayList<>(items.size());
+    Promise<Void> promise = Promise.promise();
+    convert(items, converted, new AtomicInteger(), promise);
+    return promise.future().compose(x -> {
+      List<PrintEntry> entries = new ArrayList<>();
+      List<Integer> entryPositions = new ArrayList<>();
+      for (int i = 0; i < items.size(); i++) {
+        Future<PrintEntry> f = converted.get(i);
+        if (f.succeeded()) {
+          entries.add(f.result());
+          entryPositions.add(itemPositions.get(i));
+        } else {
+          results.set(itemPositions.get(i),
+              failed(items.get(i).getValue("id"), f.cause().getMessage()));
+        }
+      }
+      return insert(entries, entryPositions);
+    });
+  }
+
+  /**
+   * Start conversions until all items are started or the limit of conversions in flight
+   * is reached; called again as each conversion completes.
+   */
+  private void convert(List<JsonObject> items, List<Future<PrintEntry>> converted,
+      AtomicInteger inFlight, Promise<Void> promise) {
+
+    while (converted.size() < items.size() && inFlight.get() < concurrency) {
+      Future<PrintEntry> f;
+      try {
+        f = converter.apply(items.get(converted.size()));
+      } catch (RuntimeException e) {
+        f = Future.failedFuture(e);
+      }
+      converted.add(f);
+      if (!f.isComplete()) {
+        inFlight.incrementAndGet();
+        f.onComplete(x -> {
+          inFlight.decrementAndGet();
+          convert(items, converted, inFlight, promise);
+        });
+      }
+    }
+    if (converted.size() == items.size() && inFlight.get() == 0) {
+      promise.tryComplete();
+    }
+  }
+
+  private Future<Void> insert(List<PrintEntry> entries, List<Integer> entryPositions) {
+    if (entries.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    return storage.createEntries(entries)
+        .map(created -> {
+          for (int i = 0; i < entries.size(); i++) {
+            results.set(entryPositions.get(i), new JsonObject()
+                .put("id", entries.get(i).getId().toString())
+                .put("status", Boolean.TRUE.equals(created.get(i)) ? "created" : "exists"));
+          }
+          return (Void) null;
+        })
+        .recover(e -> {
+          LOGGER.warn("insert:: failed to insert {} entries: {}", entries.size(), e.getMessage());
+          for (int i = 0; i < entries.size(); i++) {
+            results.set(entryPositions.get(i),
+                failed(entries.get(i).getId().toString(), e.getMessage()));
+          }
+          return Future.succeededFuture();
+        });
+  }
+
+  private Future<JsonObject> finish() {
+    return flush().map(x -> new JsonObject().put("items", results));
+  }
+
+  private static JsonObject failed(Object id, String message) {
+    JsonObject result = new JsonObject();
+    if (id instanceof String) {
+      result.put("id", id);
+    }
+    return result.put("status", "failed").put("message", message);
+  }
+}
@@ -0,0 +1,63 @@
+package org.folio.print.server.service;
+
+/**
+ * Single byte range of an HTTP Range header.
+ *
+ * @param first offset of first byte
+ * @param last offset of last byte, inclusive
+ */
+record ByteRange(long first, long last) {
+
+  /**
+   * Range that does not overlap the content.
+   */
+  static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+  private static final String BYTES = "bytes=";
+
+  /**
+   * Parse Range header for content of given length.
+   *
+   * <p>Only a single range is supported. Multiple ranges and headers that cannot be
+   * parsed are ignored, as allowed by RFC 9110, so the whole content is returned.
+   * @param header Range header value
+   * @param length content length
+   * @return range, limited to the content; {@link #UNSATISFIABLE}; null to ignore
+   */
+  static ByteRange parse(String header, long length) {
+    if (header == null || !header.startsWith(BYTES) || header.indexOf(',') != -1) {
+      return null;
+    }
+    String spec = header.substring(BYTES.length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash == -1) {
+      return null;
+    }
+    try {
+      String firstPart = spec.substring(0, dash).trim();
+      String lastPart = spec.substring(dash + 1).trim();
+      if (firstPart.isEmpty()) {
+        long suffix = Long.parseLong(lastPart);
+        if (suffix <= 0 || length == 0) {
+          return UNSATISFIABLE;
+        }
+        return new ByteRange(Math.max(0, length - suffix), length - 1);
+      }
+      long first = Long.parseLong(firstPart);
+      long last = lastPart.isEmpty() ? length - 1 : Long.parseLong(lastPart);
+      if (first < 0 || last < first) {
+        return null;
+      }
+      if (first >= length) {
+        return UNSATISFIABLE;
+      }
+      return new ByteRange(first, Math.min(last, length - 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  long length() {
+    return last - first + 1;
+  }
+}
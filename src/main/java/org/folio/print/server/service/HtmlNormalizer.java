@@ -0,0 +1,413 @@
+package org.folio.print.server.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns the HTML of a notice into XHTML that the renderer can parse, in one pass.
+ *
+ * <p>Named character references are replaced by numeric ones using the full HTML5 table,
+ * void elements are closed, attribute values are quoted, end tags without a start tag are
+ * dropped, optional end tags are inserted and elements left open are closed at the end.
+ * Comments, doctype declarations and scripts are removed. The result is wrapped in a div
+ * element and written to one buffer.
+ */
+final class HtmlNormalizer {
+
+  private static final String ENTITIES_RESOURCE = "/html5-entities.txt";
+  private static final Map<String, String> ENTITIES = loadEntities();
+  private static final Set<String> VOID_ELEMENTS = Set.of("area", "base", "br", "col",
+      "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr");
+  private static final Set<String> BLOCK_ELEMENTS = Set.of("address", "article", "aside",
+      "blockquote", "div", "dl", "fieldset", "footer", "form", "h1", "h2", "h3", "h4", "h5",
+      "h6", "header", "hr", "main", "nav", "ol", "p", "pre", "section", "table", "ul");
+  /** Elements whose end tag is implied by the start tag of one of the given elements. */
+  private static final Map<String, Set<String>> CLOSED_BY = Map.of(
+      "p", BLOCK_ELEMENTS,
+      "li", Set.of("li"),
+      "dt", Set.of("dt", "dd"),
+      "dd", Set.of("dt", "dd"),
+      "option", Set.of("option"),
+      "tr", Set.of("tr"),
+      "td", Set.of("td", "th", "tr"),
+      "th", Set.of("td", "th", "tr"));
+
+  private final String html;
+  private final StringBuilder out;
+  private final Deque<String> open = new ArrayDeque<>();
+  private int pos;
+
+  private HtmlNormalizer(String html, StringBuilder out) {
+    this.html = html;
+    this.out = out;
+  }
+
+  /**
+   * Normalize HTML.
+   * @param html HTML fragment
+   * @return XHTML div element
+   */
+  static String normalize(String html) {
+    StringBuilder out = new StringBuilder(html.length() + 64);
+    normalize(html, out, false);
+    return out.toString();
+  }
+
+  /**
+   * Normalize HTML and append it to a document.
+   * @param html HTML fragment
+   * @param out document to append the XHTML div element to
+   * @param pageBreak whether the div element starts on a new page
+   */
+  static void normalize(String html, StringBuilder out, boolean pageBreak) {
+    new HtmlNormalizer(html, out).run(pageBreak);
+  }
+
+  private void run(boolean pageBreak) {
+    out.append(pageBreak ? "<div style=\"page-break-before: always\">" : "<div>");
+    int length = html.length();
+    while (pos < length) {
+      char c = html.charAt(pos);
+      if (c == '<') {
+        markup();
+      } else if (c == '&') {
+        reference(length, false);
+      } else {
+        character(c);
+        pos++;
+      }
+    }
+    while (!open.isEmpty()) {
+      closeTop();
+    }
+    out.append("</div>");
+  }
+
+  private void markup() {
+    if (html.startsWith("<!--", pos)) {
+      int end = html.indexOf("-->", pos + 4);
+      pos = end == -1 ? html.length() : end + 3;
+    } else if (html.startsWith("<![CDATA[", pos)) {
+      int end = html.indexOf("]]>", pos + 9);
+      int stop = end == -1 ? html.length() : end;
+      escape(pos + 9, stop);
+      pos = end == -1 ? stop : end + 3;
+    } else if (html.startsWith("<!", pos) || html.startsWith("<?", pos)) {
+      int end = html.indexOf('>', pos);
+      pos = end == -1 ? html.length() : end + 1;
+    } else if (html.startsWith("</", pos) && isNameStart(pos + 2)) {
+      pos += 2;
+      String name = name();
+      int end = html.indexOf('>', pos);
+      pos = end == -1 ? html.length() : end + 1;
+      endTag(name);
+    } else if (isNameStart(pos + 1)) {
+      pos++;
+      startTag(name());
+    } else {
+      out.append("&#60;");
+      pos++;
+    }
+  }
+
+  private void startTag(String name) {
+    while (!open.isEmpty() && CLOSED_BY.getOrDefault(open.peek(), Set.of()).contains(name)) {
+      closeTop();
+    }
+    boolean script = "script".equals(name);
+    int mark = out.length();
+    out.append('<').append(name);
+    boolean selfClosing = attributes();
+    if (script) {
+      out.setLength(mark);
+      if (!selfClosing) {
+        pos = rawTextEnd(name);
+        skipEndTag();
+      }
+    } else if (VOID_ELEMENTS.contains(name) || selfClosing) {
+      out.append("/>");
+    } else if ("style".equals(name)) {
+      out.append('>');
+      int end = rawTextEnd(name);
+      escape(pos, end);
+      pos = end;
+      skipEndTag();
+      out.append("</style>");
+    } else {
+      out.append('>');
+      open.push(name);
+    }
+  }
+
+  private void endTag(String name) {
+    if ("br".equals(name)) {
+      // browsers treat </br> as <br>
+      out.append("<br/>");
+    } else if (open.contains(name)) {
+      String closed;
+      do {
+        closed = closeTop();
+      } while (!closed.equals(name));
+    }
+  }
+
+  private String closeTop() {
+    String name = open.pop();
+    out.append("</").append(name).append('>');
+    return name;
+  }
+
+  /**
+   * Copy attributes of start tag up to and including its closing bracket.
+   * @return whether the tag ends with a slash
+   */
+  private boolean attributes() {
+    int length = html.length();
+    Set<String> seen = new HashSet<>();
+    while (pos < length) {
+      char c = html.charAt(pos);
+      if (c == '>') {
+        pos++;
+        return false;
+      }
+      if (html.startsWith("/>", pos)) {
+        pos += 2;
+        return true;
+      }
+      if (Character.isWhitespace(c) || c == '/') {
+        pos++;
+        continue;
+      }
+      int nameStart = pos;
+      while (pos < length && !isAttributeNameEnd(html.charAt(pos))) {
+        pos++;
+      }
+      String name = html.substring(nameStart, pos).toLowerCase(Locale.ROOT);
+      skipWhitespace();
+      int valueStart = pos;
+      int valueEnd = pos;
+      if (pos < length && html.charAt(pos) == '=') {
+        pos++;
+        skipWhitespace();
+        char quote = pos < length ? html.charAt(pos) : 0;
+        if (quote == '"' || quote == '\'') {
+          pos++;
+          valueStart = pos;
+          int end = html.indexOf(quote, pos);
+          valueEnd = end == -1 ? length : end;
+          pos = end == -1 ? length : end + 1;
+        } else {
+          valueStart = pos;
+          while (pos < length && !Character.isWhitespace(html.charAt(pos))
+              && html.charAt(pos) != '>') {
+            pos++;
+          }
+          valueEnd = pos;
+        }
+      } else {
+        // boolean attribute such as checked
+        valueStart = nameStart;
+        valueEnd = nameStart + name.length();
+      }
+      if (isXmlName(name) && seen.add(name)) {
+        out.append(' ').append(name).append("=\"");
+        attributeValue(valueStart, valueEnd);
+        out.append('"');
+      }
+    }
+    return false;
+  }
+
+  private void attributeValue(int start, int end) {
+    int saved = pos;
+    pos = start;
+    while (pos < end) {
+      char c = html.charAt(pos);
+      if (c == '&') {
+        reference(end, true);
+        continue;
+      }
+      if (c == '<') {
+        out.append("&#60;");
+      } else if (c == '"') {
+        out.append("&#34;");
+      } else {
+        character(c);
+      }
+      pos++;
+    }
+    pos = saved;
+  }
+
+  /**
+   * Write character reference at pos, or an escaped ampersand if there is none.
+   * @param end end of the text that the reference is part of
+   * @param attribute whether the reference is in an attribute value
+   */
+  private void reference(int end, boolean attribute) {
+    int i = pos + 1;
+    if (i < end && html.charAt(i) == '#') {
+      i++;
+      boolean hex = i < end && (html.charAt(i) == 'x' || html.charAt(i) == 'X');
+      if (hex) {
+        i++;
+      }
+      int digits = i;
+      while (i < end && Character.digit(html.charAt(i), hex ? 16 : 10) >= 0) {
+        i++;
+      }
+      if (i == digits) {
+        out.append("&#38;");
+        pos++;
+        return;
+      }
+      int codePoint = i - digits > 7 ? -1 : Integer.parseInt(html, digits, i, hex ? 16 : 10);
+      if (i < end && html.charAt(i) == ';') {
+        i++;
+      }
+      out.append("&#").append(isXmlChar(codePoint) ? codePoint : 0xFFFD).append(';');
+      pos = i;
+      return;
+    }
+    while (i < end && isAsciiLetterOrDigit(html.charAt(i))) {
+      i++;
+    }
+    String name = html.substring(pos + 1, i);
+    String value = null;
+    if (i < end && html.charAt(i) == ';') {
+      value = ENTITIES.get(name + ";");
+    }
+    if (value != null) {
+      i++;
+    } else if (!attribute || i >= end || html.charAt(i) != '=') {
+      // legacy references may omit the semicolon, except before = in attribute values
+      value = ENTITIES.get(name);
+    }
+    if (value == null) {
+      out.append("&#38;");
+      pos++;
+      return;
+    }
+    value.codePoints().forEach(cp -> out.append("&#").append(cp).append(';'));
+    pos = i;
+  }
+
+  private void escape(int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = html.charAt(i);
+      if (c == '<') {
+        out.append("&#60;");
+      } else if (c == '&') {
+        out.append("&#38;");
+      } else {
+        character(c);
+      }
+    }
+  }
+
+  private void character(char c) {
+    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+      if (c != 0xFFFE && c != 0xFFFF) {
+        out.append(c);
+      }
+    }
+  }
+
+  private int rawTextEnd(String name) {
+    int i = html.indexOf("</", pos);
+    while (i != -1 && !html.regionMatches(true, i + 2, name, 0, name.length())) {
+      i = html.indexOf("</", i + 2);
+    }
+    return i == -1 ? html.length() : i;
+  }
+
+  private void skipEndTag() {
+    int end = html.indexOf('>', pos);
+    pos = end == -1 ? html.length() : end + 1;
+  }
+
+  private String name() {
+    int start = pos;
+    while (pos < html.length() && isNameChar(html.charAt(pos))) {
+      pos++;
+    }
+    return html.substring(start, pos).toLowerCase(Locale.ROOT);
+  }
+
+  private void skipWhitespace() {
+    while (pos < html.length() && Character.isWhitespace(html.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  private boolean isNameStart(int i) {
+    return i < html.length() && isAsciiLetter(html.charAt(i));
+  }
+
+  private static boolean isNameChar(char c) {
+    return isAsciiLetterOrDigit(c) || c == '-' || c == '_' || c == ':' || c == '.';
+  }
+
+  private static boolean isAttributeNameEnd(char c) {
+    return Character.isWhitespace(c) || c == '/' || c == '>' || c == '=';
+  }
+
+  private static boolean isXmlName(String name) {
+    if (name.isEmpty() || !(isAsciiLetter(name.charAt(0)) || name.charAt(0) == '_')) {
+      return false;
+    }
+    return name.chars().allMatch(c -> isNameChar((char) c));
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isAsciiLetterOrDigit(char c) {
+    return isAsciiLetter(c) || (c >= '0' && c <= '9');
+  }
+
+  private static boolean isXmlChar(int cp) {
+    return cp == '\t' || cp == '\n' || cp == '\r'
+        || (cp >= 0x20 && cp <= 0xD7FF)
+        || (cp >= 0xE000 && cp <= 0xFFFD)
+        || (cp >= 0x10000 && cp <= 0x10FFFF);
+  }
+
+  private static Map<String, String> loadEntities() {
+    Map<String, String> entities = new HashMap<>(4096);
+    try (InputStream stream = HtmlNormalizer.class.getResourceAsStream(ENTITIES_RESOURCE)) {
+      if (stream == null) {
+        throw new IllegalStateException("Missing resource " + ENTITIES_RESOURCE);
+      }
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(stream, StandardCharsets.UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split(" ");
+        StringBuilder value = new StringBuilder();
+        for (int i = 1; i < fields.length; i++) {
+          value.appendCodePoint(Integer.parseInt(fields[i]));
+        }
+        entities.put(fields[0], value.toString());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return entities;
+  }
+}
@@ -0,0 +1,34 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.json.JsonObject;
+import org.folio.okapi.common.Config;
+
+/**
+ * Settings for storing new print entries.
+ *
+ * @param chunkSize number of entries of a bulk request inserted in one transaction
+ * @param coalesceWindow milliseconds single inserts of a tenant are held back to be
+ *                       inserted together; 0 to insert each one right away
+ * @param coalesceMaxRows number of held back inserts that are inserted without waiting
+ *                        for the window to end
+ * @param maxContentSize maximum size in bytes of content uploaded as binary
+ */
+public record IngestOptions(int chunkSize, long coalesceWindow, int coalesceMaxRows,
+    long maxContentSize) {
+
+  /**
+   * Ingest options from system properties or verticle configuration.
+   * @param config verticle configuration
+   * @return ingest options
+   */
+  public static IngestOptions fromConfig(JsonObject config) {
+    return new IngestOptions(
+        Integer.parseInt(Config.getSysConf("bulk.chunkSize", "bulkChunkSize", "1000", config)),
+        Long.parseLong(Config.getSysConf("insert.coalesceWindow", "insertCoalesceWindow", "0",
+            config)),
+        Integer.parseInt(Config.getSysConf("insert.coalesceMaxRows", "insertCoalesceMaxRows",
+            "100", config)),
+        Long.parseLong(Config.getSysConf("content.maxSize", "contentMaxSize", "134217728",
+            config)));
+  }
+}
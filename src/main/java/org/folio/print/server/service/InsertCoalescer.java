@@ -0,0 +1,103 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.print.server.data.PrintEntry;
+import org.folio.print.server.storage.PrintStorage;
+
+/**
+ * Group commit for single inserts.
+ *
+ * <p>Entries of a tenant that arrive within a short window are inserted together, with
+ * one batched statement in one transaction, and each caller gets its own result. If
+ * the batch fails, its entries are inserted one by one, so that a bad entry only fails
+ * its own request, with the failure it would get without coalescing. All methods must
+ * be called on the same Vert.x context.
+ */
+class InsertCoalescer {
+  private static final Logger LOGGER = LogManager.getLogger(InsertCoalescer.class);
+
+  private final long window;
+  private final int maxRows;
+  private final Map<String, Group> groups = new HashMap<>();
+
+  private static class Group {
+    private final PrintStorage storage;
+    private final List<PrintEntry> entries = new ArrayList<>();
+    private final List<Promise<Void>> promises = new ArrayList<>();
+    private long timerId;
+
+    Group(PrintStorage storage) {
+      this.storage = storage;
+    }
+  }
+
+  /**
+   * Create coalescer.
+   * @param window milliseconds to wait for more entries after the first one
+   * @param maxRows number of entries that are inserted without waiting any longer
+   */
+  InsertCoalescer(long window, int maxRows) {
+    this.window = window;
+    this.maxRows = Math.max(1, maxRows);
+  }
+
+  /**
+   * Create entry together with other entries of the tenant.
+   * @param vertx Vert.x handle
+   * @param tenant tenant
+   * @param storage storage of tenant
+   * @param entry entry to be created
+   * @return async result
+   */
+  Future<Void> createEntry(Vertx vertx, String tenant, PrintStorage storage, PrintEntry entry) {
+    Group group = groups.get(tenant);
+    if (group == null) {
+      Group newGroup = new Group(storage);
+      newGroup.timerId = vertx.setTimer(window, id -> flush(tenant, newGroup));
+      groups.put(tenant, newGroup);
+      group = newGroup;
+    }
+    Promise<Void> promise = Promise.promise();
+    group.entries.add(entry);
+    group.promises.add(promise);
+    if (group.entries.size() >= maxRows) {
+      vertx.cancelTimer(group.timerId);
+      flush(tenant, group);
+    }
+    return promise.future();
+  }
+
+  private void flush(String tenant, Group group) {
+    if (groups.get(tenant) != group) {
+      return;
+    }
+    groups.remove(tenant);
+    group.storage.createEntries(group.entries)
+        .onSuccess(created -> {
+          for (int i = 0; i < created.size(); i++) {
+            if (Boolean.TRUE.equals(created.get(i))) {
+              group.promises.get(i).complete();
+            } else {
+              group.promises.get(i).fail(
+                  PrintStorage.entryExists(group.entries.get(i).getId()));
+            }
+          }
+        })
+        .onFailure(e -> {
+          LOGGER.warn("flush:: inserting {} entries for {} failed, inserting one by one: {}",
+              group.entries.size(), tenant, e.getMessage());
+          for (int i = 0; i < group.entries.size(); i++) {
+            group.storage.createEntry(group.entries.get(i))
+                .onComplete(group.promises.get(i));
+          }
+        });
+  }
+}
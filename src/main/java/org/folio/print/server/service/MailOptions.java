@@ -0,0 +1,35 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.json.JsonObject;
+import org.folio.okapi.common.Config;
+
+/**
+ * Settings for rendering mail.
+ *
+ * @param async whether POST /mail stores the HTML and returns before it is rendered
+ * @param renderBatch number of pending entries claimed for rendering at a time
+ * @param maxAttempts number of failed rendering attempts before an entry is FAILED
+ * @param retryDelay milliseconds before the first retry; doubled with each attempt
+ * @param lease milliseconds a claimed entry is held before another renderer may claim it
+ */
+public record MailOptions(boolean async, int renderBatch, int maxAttempts, long retryDelay,
+    long lease) {
+
+  /**
+   * Mail options from system properties or verticle configuration.
+   * @param config verticle configuration
+   * @return mail options
+   */
+  public static MailOptions fromConfig(JsonObject config) {
+    return new MailOptions(
+        Boolean.parseBoolean(Config.getSysConf("mail.async", "mailAsync", "false", config)),
+        Integer.parseInt(Config.getSysConf("mail.renderBatch", "mailRenderBatch", "10",
+            config)),
+        Integer.parseInt(Config.getSysConf("mail.renderAttempts", "mailRenderAttempts", "3",
+            config)),
+        Long.parseLong(Config.getSysConf("mail.renderRetryDelay", "mailRenderRetryDelay",
+            "10000", config)),
+        Long.parseLong(Config.getSysConf("mail.renderLease", "mailRenderLease", "300000",
+            config)));
+  }
+}
@@ -0,0 +1,71 @@
+package org.folio.print.server.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Linearizes PDF documents with the qpdf command.
+ *
+ * <p>A linearized ("fast web view") document starts with the objects of its first page,
+ * so a viewer that reads it with range requests can show that page before the rest is
+ * downloaded. PDFBox cannot write linearized documents, so this is done by qpdf, which
+ * must be installed. If qpdf fails or is missing, the document is used as it is.
+ */
+class PdfLinearizer {
+  private static final Logger LOGGER = LogManager.getLogger(PdfLinearizer.class);
+
+  private static final long TIMEOUT_MINUTES = 10;
+
+  private final String qpdf;
+
+  /**
+   * Create linearizer.
+   * @param qpdf qpdf command
+   */
+  PdfLinearizer(String qpdf) {
+    this.qpdf = qpdf;
+  }
+
+  /**
+   * Linearize document.
+   *
+   * <p>Object streams are generated too, which makes the document smaller.
+   * @param pdf document
+   * @return linearized document in the same directory; pdf if linearization failed
+   */
+  Path linearize(Path pdf) {
+    Path result = pdf.resolveSibling("linearized.pdf");
+    Path output = pdf.resolveSibling("qpdf.log");
+    ProcessBuilder builder = new ProcessBuilder(qpdf, "--linearize",
+        "--object-streams=generate", pdf.toString(), result.toString())
+        .redirectErrorStream(true)
+        .redirectOutput(output.toFile());
+    try {
+      Process process = builder.start();
+      if (!process.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+        process.destroyForcibly();
+        LOGGER.warn("linearize:: {} timed out", qpdf);
+        return pdf;
+      }
+      // exit value 3 means the output was written with warnings
+      int exitValue = process.exitValue();
+      if (exitValue != 0 && exitValue != 3) {
+        LOGGER.warn("linearize:: {} failed with exit value {}: {}", qpdf, exitValue,
+            Files.readString(output, StandardCharsets.UTF_8));
+        return pdf;
+      }
+      return result;
+    } catch (IOException e) {
+      LOGGER.warn("linearize:: cannot run {}", qpdf, e);
+      return pdf;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return pdf;
+    }
+  }
+}
@@ -1,23 +1,32 @@
 package org.folio.print.server.service;
 
 import com.lowagie.text.DocumentException;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.util.Hex;
-import org.folio.print.server.data.PrintEntry;
+import org.folio.print.server.data.PageRange;
+import org.folio.print.server.storage.EntryException;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 
 public class PdfService {
   private static final Logger LOGGER = LogManager.getLogger(PdfService.class);
 
+  /**
+   * One renderer per render thread. Creating a renderer sets up its font resolver, user
+   * agent and shared context, which costs more than laying out a typical notice, so the
+   * renderer is kept and reused for the following documents of the same thread.
+   */
+  private static final ThreadLocal<ITextRenderer> RENDERER =
+      ThreadLocal.withInitial(ITextRenderer::new);
+
   private PdfService() {
   }
 
@@ -28,66 +37,131 @@ public class PdfService {
    */
   public static byte[] createPdfFile(String htmlContent) {
     if (htmlContent != null && !htmlContent.isBlank()) {
-      try (PDDocument document = new PDDocument();
-           ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-        htmlContent = cleanHtmlData(htmlContent);
-        PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
-        ITextRenderer renderer = new ITextRenderer();
-        renderer.setDocumentFromString(htmlContent);
-        renderer.layout();
-        renderer.createPDF(os);
-        return os.toByteArray();
-      } catch (IOException | DocumentException e) {
-        LOGGER.error("Error creating PDF", e);
+      return render(HtmlNormalizer.normalize(htmlContent));
+    }
+    return new byte[0];
+  }
+
+  /**
+   * Create one PDF document from several HTML inputs, with a bookmark to the first page
+   * of each input.
+   *
+   * <p>The inputs are laid out in one pass, each starting on a new page, so fonts and
+   * other resources are in the document once rather than once per input. Style sheets
+   * of an input apply to the whole document. The title of each top level bookmark is the
+   * index of its input, so the page where each input starts can be read back from the
+   * document outline.
+   * @param htmlContents HTML inputs; blank ones are skipped and get no bookmark
+   * @return Byte array of PDF content; empty if there is no input
+   */
+  static byte[] createPdfFileBookmarked(List<String> htmlContents) {
+    StringBuilder bookmarks = new StringBuilder();
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < htmlContents.size(); i++) {
+      String htmlContent = htmlContents.get(i);
+      if (htmlContent != null && !htmlContent.isBlank()) {
+        String id = "batch-print-entry-" + i;
+        bookmarks.append("<bookmark name=\"").append(i).append("\" href=\"#").append(id)
+            .append("\"/>");
+        body.append("<div id=\"").append(id).append('"')
+            .append(body.isEmpty() ? "" : " style=\"page-break-before: always\"")
+            .append('>');
+        HtmlNormalizer.normalize(htmlContent, body, false);
+        body.append("</div>");
       }
     }
+    if (body.isEmpty()) {
+      return new byte[0];
+    }
+    return render("<html><head><bookmarks>" + bookmarks + "</bookmarks></head>"
+        + "<body style=\"margin: 0\">" + body + "</body></html>");
+  }
+
+  /**
+   * Create PDF content from HTML that is normalized already.
+   * @param xhtml output of {@link HtmlNormalizer}
+   * @return Byte array of PDF content; empty if rendering fails
+   */
+  static byte[] render(String xhtml) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    ITextRenderer renderer = RENDERER.get();
+    try {
+      renderer.setDocumentFromString(xhtml);
+      renderer.layout();
+      renderer.createPDF(os);
+      return os.toByteArray();
+    } catch (DocumentException e) {
+      RENDERER.remove();
+      LOGGER.error("Error creating PDF", e);
+    } catch (RuntimeException e) {
+      // the renderer may be left half way through a document; start over with a new one
+      RENDERER.remove();
+      throw e;
+    }
     return new byte[0];
   }
 
-  private static String cleanHtmlData(String htmlContent) {
-    return "<div>" + htmlContent
-        .replace("<br>", "<br/>")
-        .replace("&nbsp;", "&#160;")
-        .replace("&lt;", "&#60;")
-        .replace("&gt;", "&#62;")
-        .replace("&amp;", "&#38;")
-        .replace("&quot;", "&#34;")
-        .replace("&apos;", "&#39;")
-        .replace("&ndash;", "&#8211;")
-        .replace("&mdash;", "&#8212;")
-        .replace("&copy;", "&#169;")
-        .replace("&reg;", "&#174;")
-        .replace("&nbsp;", "&#160;")
-        .replace("&trade;", "&#8482;")
-        + "</div>";
+  /**
+   * Prepare renderer of the calling thread by rendering a small document.
+   *
+   * <p>Meant to be run once on each render thread when it starts, so that class loading,
+   * font setup and parsing of the default style sheet do not delay the first notice.
+   */
+  public static void warmUp() {
+    long start = System.nanoTime();
+    try {
+      createPdfFile("<p>warm up</p>");
+      LOGGER.info("warmUp:: renderer ready in {} ms", (System.nanoTime() - start) / 1_000_000);
+    } catch (RuntimeException e) {
+      LOGGER.warn("warmUp:: failed", e);
+    }
   }
 
   /**
-   * Combine single print entries in batch print file.
-   * @param entries Entries to combine
-   * @return Byte array of combined PDF file
+   * Extract pages of a PDF document.
+   *
+   * <p>The document is read from its file with scratch file buffers, so only the selected
+   * pages end up in memory.
+   * @param pdf file with PDF document
+   * @param ranges pages to extract, in the order they are to be in the result
+   * @return Byte array of PDF document with the pages
+   * @throws IOException if pdf is not a valid PDF document
+   * @throws EntryException if a page does not exist
    */
-  public static byte[] combinePdfFiles(List<PrintEntry> entries) {
-    if (!entries.isEmpty()) {
-      try (ByteArrayOutputStream mergedOutputStream = new ByteArrayOutputStream()) {
-        PDFMergerUtility pdfMerger = new PDFMergerUtility();
-        entries.forEach(e -> {
-          if (e.getContent() != null && !e.getContent().isBlank()) {
-            try {
-              pdfMerger.addSource(new ByteArrayInputStream(Hex.decodeHex(e.getContent())));
-            } catch (IOException ex) {
-              LOGGER.error("Failed to merge entry: " + e.getId(), ex);
-            }
-          }
-        });
-        pdfMerger.setDestinationStream(mergedOutputStream);
-        pdfMerger.mergeDocuments(null);
-        return mergedOutputStream.toByteArray();
-      } catch (IOException e) {
-        LOGGER.error("Error merging PDFs", e);
+  public static byte[] extractPages(Path pdf, List<PageRange> ranges) throws IOException {
+    if (Files.size(pdf) == 0) {
+      throw new EntryException("Entry has no pages");
+    }
+    try (PDDocument source = PDDocument.load(pdf.toFile(),
+            MemoryUsageSetting.setupTempFileOnly());
+         PDDocument target = new PDDocument();
+         ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+      int pageCount = source.getNumberOfPages();
+      for (PageRange range : ranges) {
+        int last = range.getFirstPage() + range.getPageCount() - 1;
+        if (range.getFirstPage() < 1 || last > pageCount) {
+          throw new EntryException("Pages " + range.getFirstPage() + "-" + last
+              + " not within 1-" + pageCount);
+        }
+        for (int i = range.getFirstPage(); i <= last; i++) {
+          target.addPage(copyPage(source.getPage(i - 1)));
+        }
       }
+      target.save(os);
+      return os.toByteArray();
     }
-    return  new byte[0];
+  }
+
+  /**
+   * Copy page dictionary, with the attributes it may inherit from the page tree of its
+   * document. Content and resources are shared, not copied.
+   */
+  private static PDPage copyPage(PDPage page) {
+    PDPage copy = new PDPage(new COSDictionary(page.getCOSObject()));
+    copy.setResources(page.getResources());
+    copy.setMediaBox(page.getMediaBox());
+    copy.setCropBox(page.getCropBox());
+    copy.setRotation(page.getRotation());
+    return copy;
   }
 }
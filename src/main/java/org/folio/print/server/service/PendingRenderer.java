@@ -0,0 +1,176 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.print.server.storage.PendingEntry;
+import org.folio.print.server.storage.PrintStorage;
+import org.folio.print.server.storage.StorageRegistry;
+
+/**
+ * Renders print entries that were stored with their HTML only.
+ *
+ * <p>Rendering runs in rounds: a round claims up to {@code renderBatch} due entries of a
+ * tenant, renders them on the render executor and stores the results. Rounds continue
+ * until no entry is due. A failed entry is retried after a delay that doubles with each
+ * attempt, and gets status FAILED after {@code maxAttempts} attempts. Entries claimed by
+ * another module instance are skipped.
+ */
+class PendingRenderer {
+  private static final Logger LOGGER = LogManager.getLogger(PendingRenderer.class);
+
+  private final RenderCache renderCache;
+  private final MailOptions options;
+  private final StorageRegistry storageRegistry;
+  private final Set<String> draining = ConcurrentHashMap.newKeySet();
+  private final Set<String> requested = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Construct pending renderer.
+   * @param renderCache cache for rendering
+   * @param options claim and retry settings
+   * @param storageRegistry storage of tenants
+   */
+  PendingRenderer(RenderCache renderCache, MailOptions options,
+      StorageRegistry storageRegistry) {
+    this.renderCache = renderCache;
+    this.options = options;
+    this.storageRegistry = storageRegistry;
+  }
+
+  /**
+   * Render due entries of tenant in the background.
+   *
+   * <p>Only one background run per tenant is active; a request made while it is active
+   * makes it do another pass when it is done.
+   * @param vertx Vert.x handle
+   * @param tenant tenant
+   */
+  void schedule(Vertx vertx, String tenant) {
+    requested.add(tenant);
+    if (!draining.add(tenant)) {
+      return;
+    }
+    requested.remove(tenant);
+    renderPending(vertx, tenant)
+        .onFailure(e -> LOGGER.error("schedule:: rendering failed for tenant {}", tenant, e))
+        .onComplete(x -> {
+          draining.remove(tenant);
+          if (requested.contains(tenant)) {
+            schedule(vertx, tenant);
+          }
+        });
+  }
+
+  /**
+   * Render all due entries of tenant.
+   * @param vertx Vert.x handle
+   * @param tenant tenant
+   * @return async result with number of entries rendered
+   */
+  Future<Integer> renderPending(Vertx vertx, String tenant) {
+    PrintStorage storage = storageRegistry.get(vertx, tenant);
+    return storage.claimPendingEntries(options.renderBatch(), options.lease())
+        .compose(entries -> {
+          if (entries.isEmpty()) {
+            return Future.succeededFuture(0);
+          }
+          LOGGER.info("renderPending:: tenant {}, rendering {} entries", tenant, entries.size());
+          return renderAll(vertx, tenant, storage, entries, false)
+              .compose(rendered -> renderPending(vertx, tenant).map(more -> rendered + more));
+        });
+  }
+
+  /**
+   * Render all pending entries of tenant created in a time window, due or not.
+   *
+   * <p>Meant for batch creation: entries leased by another renderer or waiting for a
+   * retry are rendered too, and a failed entry is retried right away until it is rendered
+   * or has status FAILED. When the render queue is full, the next round waits.
+   * @param vertx Vert.x handle
+   * @param tenant tenant
+   * @param from only entries created after this time (UTC)
+   * @param to only entries created at or before this time (UTC)
+   * @return async result with number of entries rendered
+   */
+  Future<Integer> renderPending(Vertx vertx, String tenant, LocalDateTime from,
+      LocalDateTime to) {
+
+    PrintStorage storage = storageRegistry.get(vertx, tenant);
+    return storage.claimPendingEntries(options.renderBatch(), options.lease(), from, to)
+        .compose(entries -> {
+          if (entries.isEmpty()) {
+            return Future.succeededFuture(0);
+          }
+          LOGGER.info("renderPending:: tenant {}, rendering {} entries of window", tenant,
+              entries.size());
+          return renderAll(vertx, tenant, storage, entries, true)
+              .compose(rendered -> renderPending(vertx, tenant, from, to)
+                  .map(more -> rendered + more));
+        });
+  }
+
+  private Future<Integer> renderAll(Vertx vertx, String tenant, PrintStorage storage,
+      List<PendingEntry> entries, boolean immediate) {
+
+    // all entries are submitted at once, so they are rendered in parallel
+    List<Future<Boolean>> results = entries.stream()
+        .map(entry -> render(vertx, tenant, storage, entry, immediate))
+        .toList();
+    Future<Integer> rendered = Future.succeededFuture(0);
+    for (Future<Boolean> result : results) {
+      rendered = rendered.compose(n -> result.map(ok -> Boolean.TRUE.equals(ok) ? n + 1 : n));
+    }
+    return rendered;
+  }
+
+  private Future<Boolean> render(Vertx vertx, String tenant, PrintStorage storage,
+      PendingEntry entry, boolean immediate) {
+
+    return renderCache.createPdfFile(vertx, storage, entry.source())
+        .compose(pdf -> storage.setRendered(entry.id(), pdf))
+        .recover(e -> renderFailed(vertx, tenant, storage, entry, e, immediate).map(false));
+  }
+
+  /**
+   * Record failed rendering.
+   * @param immediate whether the entry is retried right away by the caller rather than
+   *                  in the background after a delay
+   */
+  private Future<Void> renderFailed(Vertx vertx, String tenant, PrintStorage storage,
+      PendingEntry entry, Throwable cause, boolean immediate) {
+
+    if (cause instanceof RenderQueueFullException full) {
+      long delay = full.getRetryAfter() * 1000L;
+      if (immediate) {
+        Promise<Void> promise = Promise.promise();
+        vertx.setTimer(delay, id -> promise.complete());
+        return storage.postponeRendering(entry.id(), 0).compose(x -> promise.future());
+      }
+      return storage.postponeRendering(entry.id(), delay)
+          .onSuccess(x -> retryLater(vertx, tenant, delay));
+    }
+    int attempt = entry.attempts() + 1;
+    if (attempt >= options.maxAttempts()) {
+      LOGGER.error("renderFailed:: entry {} failed after {} attempts", entry.id(), attempt,
+          cause);
+      return storage.setRenderFailed(entry.id(), String.valueOf(cause.getMessage()), -1);
+    }
+    long delay = immediate ? 0 : options.retryDelay() << Math.min(attempt - 1, 16);
+    LOGGER.warn("renderFailed:: entry {}, attempt {}, retry in {} ms", entry.id(), attempt,
+        delay, cause);
+    Future<Void> future = storage.setRenderFailed(entry.id(), String.valueOf(cause.getMessage()),
+        delay);
+    return immediate ? future : future.onSuccess(x -> retryLater(vertx, tenant, delay));
+  }
+
+  private void retryLater(Vertx vertx, String tenant, long delay) {
+    vertx.setTimer(Math.max(1, delay), id -> schedule(vertx, tenant));
+  }
+}
@@ -1,8 +1,16 @@
 package org.folio.print.server.service;
 
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
@@ -11,22 +19,32 @@ import io.vertx.ext.web.openapi.RouterBuilder;
 import io.vertx.ext.web.validation.RequestParameter;
 import io.vertx.ext.web.validation.RequestParameters;
 import io.vertx.ext.web.validation.ValidationHandler;
+import java.nio.file.Path;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.pdfbox.util.Hex;
 import org.folio.okapi.common.HttpResponse;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.print.server.data.Message;
+import org.folio.print.server.data.PageRange;
 import org.folio.print.server.data.PrintEntry;
 import org.folio.print.server.data.PrintEntryType;
+import org.folio.print.server.storage.ContentTooLargeException;
+import org.folio.print.server.storage.CountMode;
+import org.folio.print.server.storage.EntryContent;
 import org.folio.print.server.storage.EntryException;
 import org.folio.print.server.storage.NotFoundException;
 import org.folio.print.server.storage.PrintStorage;
+import org.folio.print.server.storage.StorageRegistry;
 import org.folio.tlib.RouterCreator;
 import org.folio.tlib.TenantInitHooks;
 
@@ -36,6 +54,53 @@ public class PrintService implements RouterCreator, TenantInitHooks {
 
   private static final Logger log = LogManager.getLogger(PrintService.class);
 
+  private static final int CONTENT_CHUNK_SIZE = 1024 * 1024;
+
+  private static final Pattern TENANT_PATTERN = Pattern.compile("^[_a-z][_a-z0-9]*$");
+
+  private final RenderExecutor renderExecutor;
+
+  private final BatchCreationService batchCreationService;
+
+  private final IngestOptions ingestOptions;
+
+  private final InsertCoalescer insertCoalescer;
+
+  private final StorageRegistry storageRegistry = new StorageRegistry();
+
+  private final MailOptions mailOptions;
+
+  private final PendingRenderer pendingRenderer;
+
+  private final RenderCache renderCache;
+
+  private final AtomicInteger extractions = new AtomicInteger();
+
+  /**
+   * Construct print service.
+   * @param renderExecutor executor for rendering PDF files of requests
+   * @param batchExecutor executor for merging PDF files of batch creation; separate from
+   *                      renderExecutor, so a full render queue does not fail a batch run
+   * @param batchOptions batch creation settings
+   * @param ingestOptions settings for storing new entries
+   * @param mailOptions settings for rendering mail
+   * @param renderCache cache for rendering mail
+   */
+  public PrintService(RenderExecutor renderExecutor, RenderExecutor batchExecutor,
+      BatchOptions batchOptions, IngestOptions ingestOptions, MailOptions mailOptions,
+      RenderCache renderCache) {
+    this.renderExecutor = renderExecutor;
+    this.renderCache = renderCache;
+    this.mailOptions = mailOptions;
+    this.pendingRenderer = new PendingRenderer(renderCache, mailOptions, storageRegistry);
+    this.batchCreationService = new BatchCreationService(batchExecutor, batchOptions,
+        storageRegistry, pendingRenderer, renderCache);
+    this.ingestOptions = ingestOptions;
+    this.insertCoalescer = ingestOptions.coalesceWindow() > 0
+        ? new InsertCoalescer(ingestOptions.coalesceWindow(), ingestOptions.coalesceMaxRows())
+        : null;
+  }
+
   @Override
   public Future<Router> createRouter(Vertx vertx) {
     return RouterBuilder.create(vertx, "openapi/batchPrint.yaml")
@@ -44,6 +109,18 @@ public class PrintService implements RouterCreator, TenantInitHooks {
           routerBuilder.rootHandler(BodyHandler.create().setBodyLimit(BODY_LIMIT));
           handlers(routerBuilder);
           Router router = Router.router(vertx);
+          // NDJSON bodies are streamed, so these routes must not see the BodyHandler
+          router.post("/print/entries/batch").consumes(BulkIngest.NDJSON)
+              .handler(ctx -> ingestNdjson(ctx, PrintService::toEntry)
+                  .onFailure(cause -> commonError(ctx, cause)));
+          router.post("/mail/batch").consumes(BulkIngest.NDJSON)
+              .handler(ctx -> ingestNdjson(ctx,
+                  item -> renderMail(ctx.vertx(), createFromHeaders(ctx), item))
+                  .onFailure(cause -> commonError(ctx, cause)));
+          router.put("/print/entries/:id/content")
+              .consumes("application/pdf").consumes("application/octet-stream")
+              .handler(ctx -> putPrintEntryContent(ctx)
+                  .onFailure(cause -> commonError(ctx, cause)));
           router.route("/*").subRouter(routerBuilder.createRouter());
           return router;
         });
@@ -66,6 +143,11 @@ public class PrintService implements RouterCreator, TenantInitHooks {
       HttpResponse.responseError(ctx, 404, cause.getMessage());
     } else if (cause instanceof EntryException) {
       HttpResponse.responseError(ctx, 400, cause.getMessage());
+    } else if (cause instanceof ContentTooLargeException) {
+      HttpResponse.responseError(ctx, 413, cause.getMessage());
+    } else if (cause instanceof RenderQueueFullException queueFull) {
+      ctx.response().putHeader("Retry-After", Integer.toString(queueFull.getRetryAfter()));
+      HttpResponse.responseError(ctx, 503, cause.getMessage());
     } else {
       HttpResponse.responseError(ctx, defaultCode, cause.getMessage());
     }
@@ -90,12 +172,42 @@ public class PrintService implements RouterCreator, TenantInitHooks {
             .onFailure(cause -> commonError(ctx, cause))
         )
         .failureHandler(this::failureHandler);
+    routerBuilder
+        .operation("postPrintEntriesBatch")
+        .handler(ctx -> postPrintEntriesBatch(ctx)
+            .onFailure(cause -> commonError(ctx, cause))
+        )
+        .failureHandler(this::failureHandler);
+    routerBuilder
+        .operation("saveMailBatch")
+        .handler(ctx -> saveMailBatch(ctx)
+            .onFailure(cause -> commonError(ctx, cause))
+        )
+        .failureHandler(this::failureHandler);
     routerBuilder
         .operation("getPrintEntry")
         .handler(ctx -> getPrintEntry(ctx)
             .onFailure(cause -> commonError(ctx, cause))
         )
         .failureHandler(this::failureHandler);
+    routerBuilder
+        .operation("getPrintEntryContent")
+        .handler(ctx -> getPrintEntryContent(ctx)
+            .onFailure(cause -> commonError(ctx, cause))
+        )
+        .failureHandler(this::failureHandler);
+    routerBuilder
+        .operation("getPrintEntryPageIndex")
+        .handler(ctx -> getPrintEntryPageIndex(ctx)
+            .onFailure(cause -> commonError(ctx, cause))
+        )
+        .failureHandler(this::failureHandler);
+    routerBuilder
+        .operation("getPrintEntryPages")
+        .handler(ctx -> getPrintEntryPages(ctx)
+            .onFailure(cause -> commonError(ctx, cause))
+        )
+        .failureHandler(this::failureHandler);
     routerBuilder
         .operation("deletePrintEntry")
         .handler(ctx -> deletePrintEntry(ctx)
@@ -110,6 +222,13 @@ public class PrintService implements RouterCreator, TenantInitHooks {
         )
         .failureHandler(this::failureHandler);
 
+    routerBuilder
+        .operation("patchPrintEntry")
+        .handler(ctx -> patchPrintEntry(ctx)
+            .onFailure(cause -> commonError(ctx, cause))
+        )
+        .failureHandler(this::failureHandler);
+
     routerBuilder
         .operation("saveMail")
         .handler(ctx -> saveMail(ctx)
@@ -119,18 +238,20 @@ public class PrintService implements RouterCreator, TenantInitHooks {
 
     routerBuilder
         .operation("createBatch")
-        .handler(BatchCreationService::process)
+        .handler(ctx -> batchCreationService.process(ctx)
+            .onFailure(cause -> commonError(ctx, cause))
+        )
         .failureHandler(this::failureHandler);
   }
 
-  static PrintStorage createFromParams(Vertx vertx, RequestParameters params) {
+  PrintStorage createFromParams(Vertx vertx, RequestParameters params) {
     // get tenant
     RequestParameter tenantParameter = params.headerParameter(XOkapiHeaders.TENANT);
 
-    return new PrintStorage(vertx, tenantParameter.getString());
+    return storageRegistry.get(vertx, tenantParameter.getString());
   }
 
-  public static PrintStorage create(RoutingContext ctx) {
+  PrintStorage create(RoutingContext ctx) {
     return createFromParams(ctx.vertx(), ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY));
   }
 
@@ -139,10 +260,15 @@ public class PrintService implements RouterCreator, TenantInitHooks {
     PrintStorage storage = create(ctx);
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
     RequestParameter body = params.body();
-    PrintEntry entry = body.getJsonObject().mapTo(PrintEntry.class);
+    PrintEntry entry;
+    try {
+      entry = body.getJsonObject().mapTo(PrintEntry.class);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(new EntryException(e.getMessage()));
+    }
     log.info("postPrintEntry:: entry with type {}, sorting field{}",
         entry.getType(), entry.getSortingField());
-    return storage.createEntry(entry)
+    return createEntry(ctx, storage, entry)
         .map(entity -> {
           ctx.response().setStatusCode(204);
           ctx.response().end();
@@ -150,11 +276,158 @@ public class PrintService implements RouterCreator, TenantInitHooks {
         });
   }
 
+  private Future<Void> createEntry(RoutingContext ctx, PrintStorage storage, PrintEntry entry) {
+    if (insertCoalescer == null) {
+      return storage.createEntry(entry);
+    }
+    String tenant = ctx.request().getHeader(XOkapiHeaders.TENANT);
+    return insertCoalescer.createEntry(ctx.vertx(), tenant, storage, entry);
+  }
+
+  Future<Void> postPrintEntriesBatch(RoutingContext ctx) {
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    JsonArray items = params.body().getJsonArray();
+    log.info("postPrintEntriesBatch:: create {} entries", items.size());
+    return new BulkIngest(create(ctx), ingestOptions.chunkSize(),
+        renderExecutor.getQueueSize(), PrintService::toEntry)
+        .ingest(items)
+        .map(result -> bulkResponse(ctx, result));
+  }
+
+  Future<Void> saveMailBatch(RoutingContext ctx) {
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    JsonArray items = params.body().getJsonArray();
+    log.info("saveMailBatch:: create {} entries", items.size());
+    PrintStorage storage = create(ctx);
+    return new BulkIngest(storage, ingestOptions.chunkSize(), renderExecutor.getQueueSize(),
+        item -> renderMail(ctx.vertx(), storage, item))
+        .ingest(items)
+        .map(result -> bulkResponse(ctx, result));
+  }
+
+  Future<Void> ingestNdjson(RoutingContext ctx,
+      Function<JsonObject, Future<PrintEntry>> converter) {
+    PrintStorage storage;
+    try {
+      storage = createFromHeaders(ctx);
+    } catch (EntryException e) {
+      return Future.failedFuture(e);
+    }
+    log.info("ingestNdjson:: {}", ctx.request().path());
+    return new BulkIngest(storage, ingestOptions.chunkSize(), renderExecutor.getQueueSize(),
+        converter)
+        .ingest(ctx.request(), BODY_LIMIT)
+        .map(result -> bulkResponse(ctx, result));
+  }
+
+  /**
+   * Storage for routes outside the OpenAPI router, which do not validate headers.
+   */
+  private PrintStorage createFromHeaders(RoutingContext ctx) {
+    String tenant = ctx.request().getHeader(XOkapiHeaders.TENANT);
+    if (tenant == null || !TENANT_PATTERN.matcher(tenant).matches()) {
+      throw new EntryException("Missing or invalid " + XOkapiHeaders.TENANT);
+    }
+    return storageRegistry.get(ctx.vertx(), tenant);
+  }
+
+  Future<Void> putPrintEntryContent(RoutingContext ctx) {
+    HttpServerRequest request = ctx.request();
+    request.pause();
+    long maxSize = ingestOptions.maxContentSize();
+    String contentLength = request.getHeader(HttpHeaderNames.CONTENT_LENGTH);
+    UUID id;
+    PrintStorage storage;
+    try {
+      storage = createFromHeaders(ctx);
+      id = UUID.fromString(ctx.pathParam("id"));
+      if (contentLength != null && Long.parseLong(contentLength) > maxSize) {
+        return Future.failedFuture(new ContentTooLargeException(maxSize));
+      }
+    } catch (EntryException e) {
+      return Future.failedFuture(e);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(new EntryException(e.getMessage()));
+    }
+    log.info("putPrintEntryContent:: id {}, length {}", id, contentLength);
+    return storage.updateContent(id, request, maxSize)
+        .map(x -> {
+          ctx.response().setStatusCode(204);
+          ctx.response().end();
+          return null;
+        });
+  }
+
+  private static Void bulkResponse(RoutingContext ctx, JsonObject result) {
+    HttpResponse.responseJson(ctx, 200).end(result.encode());
+    return null;
+  }
+
+  private static Future<PrintEntry> toEntry(JsonObject item) {
+    PrintEntry entry;
+    try {
+      entry = item.mapTo(PrintEntry.class);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(new EntryException(e.getMessage()));
+    }
+    if (entry.getId() == null || entry.getCreated() == null || entry.getType() == null
+        || entry.getContent() == null) {
+      return Future.failedFuture(new EntryException("id, created, type and content required"));
+    }
+    return Future.succeededFuture(entry);
+  }
+
+  private Future<PrintEntry> renderMail(Vertx vertx, PrintStorage storage, JsonObject item) {
+    Message message;
+    try {
+      message = item.mapTo(Message.class);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(new EntryException(e.getMessage()));
+    }
+    if (message.getBody() == null) {
+      return Future.failedFuture(new EntryException("body required"));
+    }
+    PrintEntry entry = mailEntry(message);
+    return renderCache.createPdfFile(vertx, storage, message.getBody())
+        .map(pdf -> {
+          entry.setContent(pdf);
+          return entry;
+        });
+  }
+
+  private static PrintEntry mailEntry(Message message) {
+    PrintEntry entry = new PrintEntry();
+    entry.setId(UUID.randomUUID());
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setSortingField(message.getTo());
+    entry.setSource(message.getBody());
+    return entry;
+  }
+
   Future<Void> deletePrintEntries(RoutingContext ctx) {
     PrintStorage storage = create(ctx);
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    RequestParameter queryParameter = params.queryParameter("query");
     RequestParameter idsParameter = params.queryParameter("ids");
-    String ids = idsParameter != null ? idsParameter.getString() : "";
+    if (queryParameter != null) {
+      if (idsParameter != null) {
+        return Future.failedFuture(new EntryException("ids and query are mutually exclusive"));
+      }
+      String query = queryParameter.getString();
+      log.info("deletePrintEntries:: delete entries by query: {}", query);
+      return storage.deleteEntriesByQuery(query)
+          .map(count -> {
+            log.info("deletePrintEntries:: {} entries deleted", count);
+            ctx.response().setStatusCode(204);
+            ctx.response().end();
+            return null;
+          });
+    }
+    if (idsParameter == null) {
+      return Future.failedFuture(new EntryException("ids or query required"));
+    }
+    String ids = idsParameter.getString();
     log.info("deletePrintEntries:: delete entries by ids: {}", ids);
     List<UUID> uuids = Arrays.stream(ids.split(","))
         .filter(id -> id != null && !id.isBlank())
@@ -174,15 +447,24 @@ public class PrintService implements RouterCreator, TenantInitHooks {
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
     RequestParameter body = params.body();
     Message message = body.getJsonObject().mapTo(Message.class);
-    PrintEntry entry = new PrintEntry();
-    entry.setId(UUID.randomUUID());
-    entry.setType(PrintEntryType.SINGLE);
-    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
-    entry.setSortingField(message.getTo());
-    entry.setContent(Hex.getString(PdfService.createPdfFile(message.getBody())));
+    PrintEntry entry = mailEntry(message);
     log.info("saveMail:: entry with type {}, sorting field{}",
         entry.getType(), entry.getSortingField());
-    return storage.createEntry(entry)
+    if (mailOptions.async()) {
+      String tenant = params.headerParameter(XOkapiHeaders.TENANT).getString();
+      return storage.createPendingEntry(entry)
+          .map(x -> {
+            pendingRenderer.schedule(ctx.vertx(), tenant);
+            ctx.response().setStatusCode(HttpResponseStatus.OK.code());
+            ctx.response().end(new JsonObject().put("id", entry.getId()).encode());
+            return null;
+          });
+    }
+    return renderCache.createPdfFile(ctx.vertx(), storage, message.getBody())
+        .compose(pdf -> {
+          entry.setContent(pdf);
+          return createEntry(ctx, storage, entry);
+        })
         .map(entity -> {
           ctx.response().setStatusCode(HttpResponseStatus.OK.code());
           ctx.response().end(new JsonObject().put("id", entry.getId()).encode());
@@ -203,6 +485,239 @@ public class PrintService implements RouterCreator, TenantInitHooks {
         });
   }
 
+  Future<Void> getPrintEntryContent(RoutingContext ctx) {
+    PrintStorage storage = create(ctx);
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    UUID id = UUID.fromString(params.pathParameter("id").getString());
+    HttpServerRequest request = ctx.request();
+    String range = request.getHeader(HttpHeaderNames.RANGE);
+    String ifNoneMatch = request.getHeader(HttpHeaderNames.IF_NONE_MATCH);
+    log.info("getPrintEntryContent:: id {}, range {}", id, range);
+    if (range == null && ifNoneMatch == null) {
+      return streamContent(ctx, storage, id);
+    }
+    return storage.getContentInfo(id).compose(info -> {
+      String etag = etag(info);
+      if (etag.equals(ifNoneMatch)) {
+        ctx.response().putHeader(HttpHeaderNames.ETAG, etag).setStatusCode(304).end();
+        return Future.succeededFuture();
+      }
+      String ifRange = request.getHeader(HttpHeaderNames.IF_RANGE);
+      ByteRange byteRange = ifRange == null || ifRange.equals(etag)
+          ? ByteRange.parse(range, info.length()) : null;
+      if (byteRange == ByteRange.UNSATISFIABLE) {
+        ctx.response()
+            .putHeader(HttpHeaderNames.CONTENT_RANGE, "bytes */" + info.length())
+            .setStatusCode(416)
+            .end();
+        return Future.succeededFuture();
+      }
+      if (byteRange == null) {
+        return streamContent(ctx, storage, id);
+      }
+      return storage.getContent(id, info.version(), byteRange.first(), byteRange.length())
+          .map(content -> sendContent(ctx, 206, content, "bytes " + byteRange.first() + "-"
+              + byteRange.last() + "/" + content.length()));
+    });
+  }
+
+  Future<Void> getPrintEntryPageIndex(RoutingContext ctx) {
+    PrintStorage storage = create(ctx);
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    UUID id = UUID.fromString(params.pathParameter("id").getString());
+    log.info("getPrintEntryPageIndex:: id {}", id);
+    return storage.getPageIndex(id)
+        .map(pageIndex -> {
+          HttpResponse.responseJson(ctx, 200)
+              .end(JsonObject.mapFrom(pageIndex).encode());
+          return null;
+        });
+  }
+
+  /**
+   * Send the selected pages of an entry as PDF document.
+   *
+   * <p>Only the selected pages are copied, on the render executor, and sent.
+   */
+  Future<Void> getPrintEntryPages(RoutingContext ctx) {
+    PrintStorage storage = create(ctx);
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    UUID id = UUID.fromString(params.pathParameter("id").getString());
+    RequestParameter first = params.queryParameter("first");
+    RequestParameter last = params.queryParameter("last");
+    RequestParameter entryId = params.queryParameter("entryId");
+    RequestParameter sortingField = params.queryParameter("sortingField");
+    log.info("getPrintEntryPages:: id {}, query {}", id, ctx.request().query());
+    long selections = Stream.of(first, entryId, sortingField)
+        .filter(p -> p != null && !p.isNull())
+        .count();
+    if (selections != 1) {
+      return Future.failedFuture(
+          new EntryException("Exactly one of first, entryId and sortingField must be given"));
+    }
+    Future<List<PageRange>> ranges;
+    if (first != null && !first.isNull()) {
+      int firstPage = first.getInteger();
+      int lastPage = last == null || last.isNull() ? firstPage : last.getInteger();
+      if (lastPage < firstPage) {
+        return Future.failedFuture(new EntryException("last must not be less than first"));
+      }
+      ranges = Future.succeededFuture(
+          List.of(new PageRange(null, null, firstPage, lastPage - firstPage + 1)));
+    } else {
+      Predicate<PageRange> selected = entryId != null && !entryId.isNull()
+          ? range -> UUID.fromString(entryId.getString()).equals(range.getId())
+          : range -> sortingField.getString().equals(range.getSortingField());
+      ranges = storage.getPageIndex(id)
+          .map(pageIndex -> {
+            List<PageRange> found = pageIndex.getEntries().stream().filter(selected).toList();
+            if (found.isEmpty()) {
+              throw new NotFoundException("No pages found in entry " + id);
+            }
+            return found;
+          });
+    }
+    return ranges
+        .compose(selectedRanges -> extractPages(ctx.vertx(), storage, id, selectedRanges))
+        .map(pdf -> {
+          ctx.response()
+              .setStatusCode(200)
+              .putHeader(HttpHeaderNames.CONTENT_TYPE, "application/pdf")
+              .putHeader(HttpHeaderNames.CONTENT_LENGTH, Integer.toString(pdf.length))
+              .end(Buffer.buffer(pdf));
+          return null;
+        });
+  }
+
+  /**
+   * Copy pages of an entry, with at most one extraction per render thread at a time.
+   *
+   * <p>The content is staged to a scratch file in chunks of {@value #CONTENT_CHUNK_SIZE}
+   * bytes and the pages are read from there, so neither the content nor the whole
+   * document is held in memory.
+   * @return async result with PDF document; RenderQueueFullException if as many
+   *     extractions as render threads are running
+   */
+  private Future<byte[]> extractPages(Vertx vertx, PrintStorage storage, UUID id,
+      List<PageRange> ranges) {
+
+    if (extractions.incrementAndGet() > renderExecutor.getThreads()) {
+      extractions.decrementAndGet();
+      return Future.failedFuture(
+          new RenderQueueFullException(renderExecutor.retryAfterSeconds()));
+    }
+    return vertx.fileSystem().createTempFile("print-pages", ".pdf")
+        .compose(path -> vertx.fileSystem().open(path, new OpenOptions().setWrite(true))
+            .compose(file -> stageContent(storage, id, file, null, 0)
+                .eventually(x -> file.close()))
+            .compose(x -> renderExecutor.submit(vertx,
+                () -> PdfService.extractPages(Path.of(path), ranges)))
+            .eventually(x -> vertx.fileSystem().delete(path)))
+        .eventually(x -> {
+          extractions.decrementAndGet();
+          return Future.succeededFuture();
+        });
+  }
+
+  private Future<Void> stageContent(PrintStorage storage, UUID id, AsyncFile file,
+      String version, long offset) {
+
+    return storage.getContent(id, version, offset, CONTENT_CHUNK_SIZE)
+        .compose(chunk -> {
+          Buffer body = body(chunk);
+          long next = offset + body.length();
+          Future<Void> written = file.write(body);
+          if (next >= chunk.length() || body.length() == 0) {
+            return written;
+          }
+          return written.compose(x -> stageContent(storage, id, file, chunk.version(), next));
+        });
+  }
+
+  private static String etag(EntryContent content) {
+    return "\"" + content.version() + "\"";
+  }
+
+  /**
+   * Send whole content, read in chunks of {@value #CONTENT_CHUNK_SIZE} bytes.
+   *
+   * <p>The headers go out with the first chunk, so a PDF viewer can abort and switch to
+   * range requests for a linearized document right away. The next chunk is read only when
+   * the response can take it, and reading stops when the client goes away.
+   */
+  private Future<Void> streamContent(RoutingContext ctx, PrintStorage storage, UUID id) {
+    return storage.getContent(id, null, 0, CONTENT_CHUNK_SIZE)
+        .map(first -> {
+          Buffer body = body(first);
+          if (body.length() >= first.length()) {
+            return sendContent(ctx, 200, first, null);
+          }
+          HttpServerResponse response = contentResponse(ctx, 200, first, first.length(), null);
+          response.write(body);
+          writeContent(response, storage, id, first, body.length());
+          return null;
+        });
+  }
+
+  private void writeContent(HttpServerResponse response, PrintStorage storage, UUID id,
+      EntryContent info, long offset) {
+
+    if (response.closed()) {
+      return;
+    }
+    if (response.writeQueueFull()) {
+      response.drainHandler(x -> writeContent(response, storage, id, info, offset));
+      return;
+    }
+    long length = Math.min(CONTENT_CHUNK_SIZE, info.length() - offset);
+    storage.getContent(id, info.version(), offset, length)
+        .onSuccess(chunk -> {
+          Buffer body = body(chunk);
+          long next = offset + body.length();
+          if (next >= info.length() || body.length() == 0) {
+            response.end(body);
+          } else {
+            response.write(body);
+            writeContent(response, storage, id, info, next);
+          }
+        })
+        .onFailure(e -> {
+          // headers are sent already; all that can be done is to abort the response
+          log.warn("writeContent:: reading content of {} failed", id, e);
+          response.reset();
+        });
+  }
+
+  private static Buffer body(EntryContent content) {
+    return content.content() == null ? Buffer.buffer() : content.content();
+  }
+
+  /**
+   * Send PDF content as is; the buffer read from the database is the response body.
+   */
+  private static Void sendContent(RoutingContext ctx, int status, EntryContent content,
+      String contentRange) {
+    Buffer body = body(content);
+    contentResponse(ctx, status, content, body.length(), contentRange).end(body);
+    return null;
+  }
+
+  private static HttpServerResponse contentResponse(RoutingContext ctx, int status,
+      EntryContent content, long length, String contentRange) {
+    HttpServerResponse response = ctx.response()
+        .setStatusCode(status)
+        .putHeader(HttpHeaderNames.CONTENT_TYPE, "application/pdf")
+        .putHeader(HttpHeaderNames.CONTENT_LENGTH, Long.toString(length))
+        .putHeader(HttpHeaderNames.ACCEPT_RANGES, "bytes")
+        .putHeader(HttpHeaderNames.ETAG, etag(content))
+        // PDF is compressed already, and compression would break ranges
+        .putHeader(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.IDENTITY);
+    if (contentRange != null) {
+      response.putHeader(HttpHeaderNames.CONTENT_RANGE, contentRange);
+    }
+    return response;
+  }
+
   Future<Void> deletePrintEntry(RoutingContext ctx) {
     PrintStorage printStorage = create(ctx);
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
@@ -216,11 +731,40 @@ public class PrintService implements RouterCreator, TenantInitHooks {
         });
   }
 
+  Future<Void> patchPrintEntry(RoutingContext ctx) {
+    PrintStorage printStorage = create(ctx);
+    RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
+    JsonObject patch = params.body().getJsonObject();
+    UUID id = UUID.fromString(params.pathParameter("id").getString());
+    log.info("patchPrintEntry:: update fields {} of entry {}", patch.fieldNames(), id);
+    if ((patch.containsKey("created") && patch.getValue("created") == null)
+        || (patch.containsKey("type") && patch.getValue("type") == null)) {
+      return Future.failedFuture(new EntryException("created and type cannot be null"));
+    }
+    PrintEntry entry;
+    try {
+      entry = patch.mapTo(PrintEntry.class);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(new EntryException(e.getMessage()));
+    }
+    return printStorage.patchEntry(id, entry, patch.fieldNames())
+        .map(entity -> {
+          ctx.response().setStatusCode(204);
+          ctx.response().end();
+          return null;
+        });
+  }
+
   Future<Void> updatePrintEntry(RoutingContext ctx) {
     PrintStorage printStorage = create(ctx);
     RequestParameters params = ctx.get(ValidationHandler.REQUEST_CONTEXT_KEY);
     RequestParameter body = params.body();
-    PrintEntry entry = body.getJsonObject().mapTo(PrintEntry.class);
+    PrintEntry entry;
+    try {
+      entry = body.getJsonObject().mapTo(PrintEntry.class);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(new EntryException(e.getMessage()));
+    }
     UUID id  = UUID.fromString(params.pathParameter("id").getString());
     log.info("updatePrintEntry:: update single entry by id: {}", id);
     if (!id.equals(entry.getId())) {
@@ -241,9 +785,14 @@ public class PrintService implements RouterCreator, TenantInitHooks {
     String query = queryParameter != null ? queryParameter.getString() : null;
     int limit = params.queryParameter("limit").getInteger();
     int offset = params.queryParameter("offset").getInteger();
-    log.info("getPrintEntries:: get entries by query: {}, limit {}, offset {}",
-        query, limit, offset);
-    return storage.getEntries(ctx.response(), query, offset, limit);
+    RequestParameter afterParameter = params.queryParameter("after");
+    String after = afterParameter != null ? afterParameter.getString() : null;
+    RequestParameter countParameter = params.queryParameter("count");
+    CountMode count = CountMode.fromParameter(
+        countParameter != null ? countParameter.getString() : null);
+    log.info("getPrintEntries:: get entries by query: {}, limit {}, offset {}, after {}",
+        query, limit, offset, after);
+    return storage.getEntries(ctx.response(), query, offset, limit, after, count);
   }
 
   @Override
@@ -251,7 +800,7 @@ public class PrintService implements RouterCreator, TenantInitHooks {
     if (!tenantAttributes.containsKey("module_to")) {
       return Future.succeededFuture(); // doing nothing for disable
     }
-    PrintStorage storage = new PrintStorage(vertx, tenant);
+    PrintStorage storage = storageRegistry.get(vertx, tenant);
     return storage.init();
   }
 
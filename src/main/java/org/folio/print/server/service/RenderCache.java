@@ -0,0 +1,185 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.print.server.storage.PrintStorage;
+
+/**
+ * Renders mail through a cache of PDF documents keyed by a SHA-256 hash of the normalized
+ * HTML.
+ *
+ * <p>Mass notices are often identical, so a document rendered once can be used again.
+ * The memory tier holds the most recently used documents up to a number of bytes. The
+ * optional persistent tier is a table in the schema of the tenant, which survives
+ * restarts and is shared by the module instances; its rows expire after a time to live.
+ * Documents are never shared between tenants.
+ *
+ * <p>The HTML is normalized and hashed on the render thread, and the memory tier is
+ * looked up there too, right before rendering. Identical notices that arrive at the same
+ * time are thus rendered at most once per render thread.
+ */
+public class RenderCache {
+  private static final Logger LOGGER = LogManager.getLogger(RenderCache.class);
+
+  private final RenderExecutor renderExecutor;
+  private final RenderCacheOptions options;
+  private final LinkedHashMap<String, byte[]> documents = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong persistentHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private long bytes;
+
+  private record Lookup(String key, String hash, String xhtml, byte[] pdf) {
+  }
+
+  /**
+   * Create render cache.
+   * @param renderExecutor executor for rendering
+   * @param options cache settings
+   */
+  public RenderCache(RenderExecutor renderExecutor, RenderCacheOptions options) {
+    this.renderExecutor = renderExecutor;
+    this.options = options;
+  }
+
+  /**
+   * Create PDF content from HTML input, or reuse content created from the same input.
+   * @param vertx Vert.x handle
+   * @param storage storage of the tenant
+   * @param html HTML input
+   * @return async result with PDF content; empty if html is blank; failed with
+   *     {@link RenderQueueFullException} if the render queue is full
+   */
+  public Future<byte[]> createPdfFile(Vertx vertx, PrintStorage storage, String html) {
+    if (html == null || html.isBlank()) {
+      return Future.succeededFuture(new byte[0]);
+    }
+    if (!options.enabled()) {
+      return renderExecutor.submit(vertx, () -> PdfService.createPdfFile(html));
+    }
+    String tenant = storage.getTenant();
+    if (!options.persistent()) {
+      return renderExecutor.submit(vertx, () -> {
+        Lookup lookup = lookup(tenant, html);
+        return lookup.pdf() != null ? lookup.pdf() : render(lookup);
+      });
+    }
+    return renderExecutor.submit(vertx, () -> lookup(tenant, html))
+        .compose(lookup -> {
+          if (lookup.pdf() != null) {
+            return Future.succeededFuture(lookup.pdf());
+          }
+          return storage.getCachedPdf(lookup.hash(), options.ttl())
+              .recover(e -> {
+                LOGGER.warn("createPdfFile:: reading render cache failed", e);
+                return Future.succeededFuture();
+              })
+              .compose(pdf -> {
+                if (pdf != null) {
+                  persistentHits.incrementAndGet();
+                  put(lookup.key(), pdf);
+                  return Future.succeededFuture(pdf);
+                }
+                return renderExecutor.submit(vertx, () -> render(lookup))
+                    .compose(rendered -> store(storage, lookup, rendered));
+              });
+        });
+  }
+
+  private Future<byte[]> store(PrintStorage storage, Lookup lookup, byte[] pdf) {
+    if (pdf.length == 0) {
+      return Future.succeededFuture(pdf);
+    }
+    return storage.putCachedPdf(lookup.hash(), pdf)
+        .recover(e -> {
+          LOGGER.warn("store:: writing render cache failed", e);
+          return Future.succeededFuture();
+        })
+        .map(pdf);
+  }
+
+  /**
+   * Delete expired documents of the persistent tier.
+   * @param storage storage of the tenant
+   * @return async result with number of documents deleted
+   */
+  public Future<Integer> prune(PrintStorage storage) {
+    if (!options.persistent()) {
+      return Future.succeededFuture(0);
+    }
+    return storage.deleteCachedPdfs(options.ttl());
+  }
+
+  private Lookup lookup(String tenant, String html) {
+    String xhtml = HtmlNormalizer.normalize(html);
+    String hash = hash(xhtml);
+    String key = tenant + "/" + hash;
+    byte[] pdf = get(key);
+    if (pdf != null) {
+      hits.incrementAndGet();
+    }
+    return new Lookup(key, hash, xhtml, pdf);
+  }
+
+  private byte[] render(Lookup lookup) {
+    misses.incrementAndGet();
+    byte[] pdf = PdfService.render(lookup.xhtml());
+    if (pdf.length > 0) {
+      put(lookup.key(), pdf);
+    }
+    return pdf;
+  }
+
+  private static String hash(String xhtml) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(md.digest(xhtml.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private synchronized byte[] get(String key) {
+    return documents.get(key);
+  }
+
+  private synchronized void put(String key, byte[] pdf) {
+    if (pdf.length > options.memory()) {
+      return;
+    }
+    byte[] old = documents.put(key, pdf);
+    bytes += pdf.length - (old == null ? 0 : old.length);
+    Iterator<byte[]> iterator = documents.values().iterator();
+    while (bytes > options.memory() && iterator.hasNext()) {
+      bytes -= iterator.next().length;
+      iterator.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  /**
+   * Hit, miss and eviction statistics.
+   * @return statistics as JSON
+   */
+  public synchronized JsonObject getStats() {
+    return new JsonObject()
+        .put("entries", documents.size())
+        .put("bytes", bytes)
+        .put("maxBytes", options.memory())
+        .put("hits", hits.get())
+        .put("persistentHits", persistentHits.get())
+        .put("misses", misses.get())
+        .put("evictions", evictions.get());
+  }
+}
@@ -0,0 +1,37 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.json.JsonObject;
+import org.folio.okapi.common.Config;
+
+/**
+ * Settings for the cache of rendered mail.
+ *
+ * @param memory bytes of PDF documents kept in memory; 0 for no memory tier
+ * @param persistent whether documents are also stored in the database of the tenant
+ * @param ttl milliseconds a document is kept in the database
+ */
+public record RenderCacheOptions(long memory, boolean persistent, long ttl) {
+
+  /**
+   * Render cache options from system properties or verticle configuration.
+   * @param config verticle configuration
+   * @return render cache options
+   */
+  public static RenderCacheOptions fromConfig(JsonObject config) {
+    return new RenderCacheOptions(
+        Long.parseLong(Config.getSysConf("render.cacheMemory", "renderCacheMemory",
+            "16777216", config)),
+        Boolean.parseBoolean(Config.getSysConf("render.cachePersistent",
+            "renderCachePersistent", "false", config)),
+        Long.parseLong(Config.getSysConf("render.cacheTtl", "renderCacheTtl", "86400000",
+            config)));
+  }
+
+  /**
+   * Whether there is any cache tier.
+   * @return true if documents are cached
+   */
+  public boolean enabled() {
+    return memory > 0 || persistent;
+  }
+}
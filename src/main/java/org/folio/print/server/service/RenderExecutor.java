@@ -0,0 +1,179 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Executes CPU bound PDF work (rendering, merging) outside the Vert.x event loop.
+ *
+ * <p>The executor has a fixed number of threads and a bounded queue. When the queue
+ * is full, tasks are rejected with {@link RenderQueueFullException} instead of piling
+ * up in memory.
+ */
+public class RenderExecutor {
+  private static final Logger LOGGER = LogManager.getLogger(RenderExecutor.class);
+
+  private final ThreadPoolExecutor executor;
+  private final int threads;
+  private final int queueSize;
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  private final AtomicLong runNanos = new AtomicLong();
+
+  /**
+   * Create render executor.
+   * @param threads number of render threads
+   * @param queueSize maximum number of tasks waiting for a thread
+   */
+  public RenderExecutor(int threads, int queueSize) {
+    this(threads, queueSize, null);
+  }
+
+  /**
+   * Create render executor with started threads.
+   *
+   * <p>All threads are started right away and each runs the initializer before taking
+   * tasks, so per thread setup such as renderer warm up is done before the first request.
+   * @param threads number of render threads
+   * @param queueSize maximum number of tasks waiting for a thread
+   * @param threadInit run on each render thread when it starts; null for none
+   */
+  public RenderExecutor(int threads, int queueSize, Runnable threadInit) {
+    if (threads < 1 || queueSize < 1) {
+      throw new IllegalArgumentException("threads and queueSize must be positive");
+    }
+    this.threads = threads;
+    this.queueSize = queueSize;
+    AtomicInteger counter = new AtomicInteger();
+    ThreadFactory threadFactory = r -> {
+      Runnable runnable = threadInit == null ? r : () -> {
+        threadInit.run();
+        r.run();
+      };
+      Thread thread = new Thread(runnable, "render-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    if (threadInit != null) {
+      executor.prestartAllCoreThreads();
+    }
+  }
+
+  /**
+   * Run task on a render thread.
+   *
+   * <p>The returned future is completed on the context of the caller.
+   * @param vertx Vert.x handle
+   * @param task the work to perform
+   * @param <T> result type
+   * @return async result; failed with {@link RenderQueueFullException} if the queue is full
+   */
+  public <T> Future<T> submit(Vertx vertx, Callable<T> task) {
+    Context context = vertx.getOrCreateContext();
+    Promise<T> promise = Promise.promise();
+    long queued = System.nanoTime();
+    try {
+      executor.execute(() -> {
+        long started = System.nanoTime();
+        recordWait(started - queued);
+        try {
+          T result = task.call();
+          completed.incrementAndGet();
+          context.runOnContext(x -> promise.complete(result));
+        } catch (Exception e) {
+          failed.incrementAndGet();
+          context.runOnContext(x -> promise.fail(e));
+        } finally {
+          runNanos.addAndGet(System.nanoTime() - started);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      rejected.incrementAndGet();
+      LOGGER.warn("submit:: render queue full ({} tasks)", queueSize);
+      return Future.failedFuture(new RenderQueueFullException(retryAfterSeconds()));
+    }
+    submitted.incrementAndGet();
+    return promise.future();
+  }
+
+  private void recordWait(long nanos) {
+    waitNanos.addAndGet(nanos);
+    maxWaitNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  /**
+   * Estimate of how long it takes to drain the current queue.
+   * @return seconds, at least 1
+   */
+  int retryAfterSeconds() {
+    long done = completed.get() + failed.get();
+    if (done == 0) {
+      return 1;
+    }
+    double avgSeconds = runNanos.get() / (double) done / 1e9;
+    return (int) Math.max(1, Math.ceil(avgSeconds * executor.getQueue().size() / threads));
+  }
+
+  /**
+   * Number of render threads.
+   * @return threads
+   */
+  int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Maximum number of tasks waiting for a thread.
+   * @return queue size
+   */
+  int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+   * Queue depth, throughput and wait time statistics.
+   * @return statistics as JSON
+   */
+  public JsonObject getStats() {
+    long done = completed.get() + failed.get();
+    long started = done + executor.getActiveCount();
+    return new JsonObject()
+        .put("threads", threads)
+        .put("active", executor.getActiveCount())
+        .put("queued", executor.getQueue().size())
+        .put("queueSize", queueSize)
+        .put("submitted", submitted.get())
+        .put("completed", completed.get())
+        .put("failed", failed.get())
+        .put("rejected", rejected.get())
+        .put("waitTimeAvgMs", started == 0 ? 0 : waitNanos.get() / started / 1_000_000)
+        .put("waitTimeMaxMs", maxWaitNanos.get() / 1_000_000)
+        .put("runTimeAvgMs", done == 0 ? 0 : runNanos.get() / done / 1_000_000);
+  }
+
+  /**
+   * Stop accepting tasks; already queued tasks are still executed.
+   */
+  public void close() {
+    executor.shutdown();
+  }
+}
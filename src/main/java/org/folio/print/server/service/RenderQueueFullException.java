@@ -0,0 +1,14 @@
+package org.folio.print.server.service;
+
+public class RenderQueueFullException extends RuntimeException {
+  private final int retryAfter;
+
+  public RenderQueueFullException(int retryAfter) {
+    super("Render queue full, retry later");
+    this.retryAfter = retryAfter;
+  }
+
+  public int getRetryAfter() {
+    return retryAfter;
+  }
+}
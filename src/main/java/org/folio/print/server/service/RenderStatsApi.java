@@ -0,0 +1,32 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.web.Router;
+import org.folio.okapi.common.HttpResponse;
+import org.folio.tlib.RouterCreator;
+
+/**
+ * Exposes render executor and render cache statistics at /admin/render-stats.
+ */
+public class RenderStatsApi implements RouterCreator {
+
+  private final RenderExecutor renderExecutor;
+
+  private final RenderCache renderCache;
+
+  public RenderStatsApi(RenderExecutor renderExecutor, RenderCache renderCache) {
+    this.renderExecutor = renderExecutor;
+    this.renderCache = renderCache;
+  }
+
+  @Override
+  public Future<Router> createRouter(Vertx vertx) {
+    Router router = Router.router(vertx);
+    router.get("/admin/render-stats").handler(ctx ->
+        HttpResponse.responseJson(ctx, 200).end(renderExecutor.getStats()
+            .put("cache", renderCache.getStats())
+            .encode()));
+    return Future.succeededFuture(router);
+  }
+}
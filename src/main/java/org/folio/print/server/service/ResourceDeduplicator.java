@@ -0,0 +1,196 @@
+package org.folio.print.server.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+/**
+ * Makes identical resource streams of a document one shared stream.
+ *
+ * <p>Merged documents each bring their own copy of fonts, images and color profiles.
+ * Streams reachable from the page resources are compared by a SHA-256 digest of their
+ * dictionary and encoded data, and all references to a stream are pointed to the first
+ * stream with the same digest. The copies are then no longer written when the document
+ * is saved.
+ */
+final class ResourceDeduplicator {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Map<String, COSStream> canonical = new HashMap<>();
+  private final Map<COSBase, String> digests = new IdentityHashMap<>();
+  private final Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int replaced;
+
+  private ResourceDeduplicator() {
+  }
+
+  /**
+   * Share identical resource streams of document.
+   * @param document document; changed in place
+   * @return number of references that were pointed to another stream
+   * @throws IOException if stream data cannot be read
+   */
+  static int deduplicate(PDDocument document) throws IOException {
+    ResourceDeduplicator deduplicator = new ResourceDeduplicator();
+    for (PDPage page : document.getPages()) {
+      PDResources resources = page.getResources();
+      if (resources != null) {
+        deduplicator.visit(resources.getCOSObject());
+      }
+    }
+    return deduplicator.replaced;
+  }
+
+  /**
+   * Visit object and what it refers to.
+   * @param value object or reference to it
+   * @return stream to use instead of value; value if it is to be kept
+   */
+  private COSBase visit(COSBase value) throws IOException {
+    COSBase object = value instanceof COSObject reference ? reference.getObject() : value;
+    if (object == null || !visited.add(object)) {
+      return replacement(object, value);
+    }
+    if (object instanceof COSDictionary dictionary) {
+      for (COSName key : new ArrayList<>(dictionary.keySet())) {
+        if (COSName.PARENT.equals(key)) {
+          continue;
+        }
+        COSBase item = dictionary.getItem(key);
+        COSBase newItem = visit(item);
+        if (newItem != item) {
+          dictionary.setItem(key, newItem);
+        }
+      }
+      if (object instanceof COSStream stream) {
+        String digest = digest(stream);
+        digests.put(stream, digest);
+        canonical.putIfAbsent(digest, stream);
+      }
+    } else if (object instanceof COSArray array) {
+      for (int i = 0; i < array.size(); i++) {
+        COSBase item = array.get(i);
+        COSBase newItem = visit(item);
+        if (newItem != item) {
+          array.set(i, newItem);
+        }
+      }
+    }
+    return replacement(object, value);
+  }
+
+  private COSBase replacement(COSBase object, COSBase value) {
+    String digest = digests.get(object);
+    if (digest == null) {
+      return value;
+    }
+    COSStream first = canonical.get(digest);
+    if (first == object) {
+      return value;
+    }
+    replaced++;
+    return first;
+  }
+
+  private String digest(COSStream stream) throws IOException {
+    MessageDigest md = newDigest();
+    update(md, stream, Collections.newSetFromMap(new IdentityHashMap<>()));
+    try (InputStream in = stream.createRawInputStream()) {
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        md.update(buffer, 0, n);
+      }
+    }
+    return HexFormat.of().formatHex(md.digest());
+  }
+
+  private void update(MessageDigest md, COSBase value, Set<COSBase> path) {
+    COSBase object = value instanceof COSObject reference ? reference.getObject() : value;
+    String digest = digests.get(object);
+    if (digest != null) {
+      update(md, "S" + digest);
+    } else if (!path.add(object)) {
+      // reference cycle; make the digest unique to this object
+      update(md, "C" + System.identityHashCode(object));
+    } else if (object instanceof COSDictionary dictionary) {
+      update(md, "D<");
+      List<COSName> keys = new ArrayList<>(dictionary.keySet());
+      keys.sort(null);
+      for (COSName key : keys) {
+        if (!COSName.LENGTH.equals(key) && !COSName.PARENT.equals(key)) {
+          update(md, "/" + key.getName());
+          update(md, dictionary.getItem(key), path);
+        }
+      }
+      update(md, ">");
+      path.remove(object);
+    } else if (object instanceof COSArray array) {
+      update(md, "A[");
+      for (int i = 0; i < array.size(); i++) {
+        update(md, array.get(i), path);
+      }
+      update(md, "]");
+      path.remove(object);
+    } else {
+      update(md, token(object));
+      path.remove(object);
+    }
+  }
+
+  private static String token(COSBase object) {
+    if (object instanceof COSName name) {
+      return "N" + name.getName();
+    }
+    if (object instanceof COSString string) {
+      return "T" + HexFormat.of().formatHex(string.getBytes());
+    }
+    if (object instanceof COSInteger integer) {
+      return "I" + integer.longValue();
+    }
+    if (object instanceof COSFloat number) {
+      return "F" + number.floatValue();
+    }
+    if (object instanceof COSBoolean bool) {
+      return "B" + bool.getValue();
+    }
+    return "0";
+  }
+
+  private static void update(MessageDigest md, String token) {
+    md.update(token.getBytes(StandardCharsets.UTF_8));
+    md.update((byte) 0);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package org.folio.print.server.storage;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * Writes a stream to a temporary file, up to a maximum size.
+ *
+ * <p>Used to receive an upload before a database connection is taken, so a slow client
+ * does not hold a pooled connection, a transaction or a row lock. The caller owns the
+ * file and must delete it.
+ */
+class ContentSpooler {
+
+  private final Vertx vertx;
+  private final ReadStream<Buffer> stream;
+  private final long maxSize;
+  private final Promise<String> promise = Promise.promise();
+  private AsyncFile file;
+  private String path;
+  private long size;
+  private boolean failed;
+
+  private ContentSpooler(Vertx vertx, ReadStream<Buffer> stream, long maxSize) {
+    this.vertx = vertx;
+    this.stream = stream;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Spool stream to a temporary file.
+   * @param vertx Vert.x handle
+   * @param stream content; paused while the file catches up
+   * @param maxSize maximum number of bytes; 0 for no limit
+   * @return async result with path of file; fails with {@link ContentTooLargeException}
+   *     as soon as the stream exceeds maxSize, in which case the file is removed
+   */
+  static Future<String> spool(Vertx vertx, ReadStream<Buffer> stream, long maxSize) {
+    stream.pause();
+    return new ContentSpooler(vertx, stream, maxSize).start();
+  }
+
+  private Future<String> start() {
+    return vertx.fileSystem().createTempFile("print-content", ".tmp")
+        .compose(p -> {
+          path = p;
+          return vertx.fileSystem().open(path, new OpenOptions().setWrite(true));
+        })
+        .compose(f -> {
+          file = f;
+          file.exceptionHandler(this::fail);
+          stream.exceptionHandler(this::fail);
+          stream.endHandler(x -> {
+            if (!failed) {
+              file.close()
+                  .onSuccess(y -> promise.tryComplete(path))
+                  .onFailure(this::fail);
+            }
+          });
+          stream.handler(this::handle);
+          stream.resume();
+          return promise.future();
+        })
+        .recover(e -> path == null
+            ? Future.failedFuture(e)
+            : vertx.fileSystem().delete(path).transform(x -> Future.failedFuture(e)));
+  }
+
+  private void handle(Buffer buffer) {
+    if (failed) {
+      return;
+    }
+    size += buffer.length();
+    if (maxSize > 0 && size > maxSize) {
+      fail(new ContentTooLargeException(maxSize));
+      return;
+    }
+    file.write(buffer);
+    if (file.writeQueueFull()) {
+      stream.pause();
+      file.drainHandler(x -> stream.resume());
+    }
+  }
+
+  private void fail(Throwable e) {
+    if (failed) {
+      return;
+    }
+    failed = true;
+    // keep reading, so the rest of the upload is discarded rather than left in the socket
+    stream.resume();
+    file.close().onComplete(x -> promise.tryFail(e));
+  }
+}
@@ -0,0 +1,7 @@
+package org.folio.print.server.storage;
+
+public class ContentTooLargeException extends RuntimeException {
+  public ContentTooLargeException(long maxSize) {
+    super("Content exceeds " + maxSize + " bytes");
+  }
+}
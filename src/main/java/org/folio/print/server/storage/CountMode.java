@@ -0,0 +1,32 @@
+package org.folio.print.server.storage;
+
+import java.util.Locale;
+
+/**
+ * How totalRecords is computed for entry lists.
+ */
+public enum CountMode {
+  /** Count all matching rows. */
+  EXACT,
+  /** Row estimate of the query planner; cheap, but may be far off. */
+  ESTIMATE,
+  /** No count; totalRecords is omitted. */
+  NONE;
+
+  /**
+   * Get mode for value of the count parameter.
+   * @param value parameter value, such as "exact"; null for default
+   * @return mode
+   * @throws EntryException if value is unknown
+   */
+  public static CountMode fromParameter(String value) {
+    if (value == null) {
+      return NONE;
+    }
+    try {
+      return valueOf(value.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new EntryException("Invalid count: " + value);
+    }
+  }
+}
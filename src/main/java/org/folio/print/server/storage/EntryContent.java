@@ -0,0 +1,13 @@
+package org.folio.print.server.storage;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Content of a print entry, or a part of it.
+ *
+ * @param version row version; changes whenever the entry is updated
+ * @param length length of the whole content in bytes
+ * @param content the content or the requested part of it; null if not requested
+ */
+public record EntryContent(String version, long length, Buffer content) {
+}
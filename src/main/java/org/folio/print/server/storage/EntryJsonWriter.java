@@ -0,0 +1,125 @@
+package org.folio.print.server.storage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+/**
+ * Writes entry list responses straight from database rows.
+ *
+ * <p>Rows are serialized with a streaming Jackson generator into one buffer, which is
+ * written to the response only when {@link #flush()} is called, so there is one write
+ * per fetched batch of rows rather than several per row. The JSON is the same as for
+ * a {@code PrintEntry} without content.
+ */
+final class EntryJsonWriter {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final HttpServerResponse response;
+  private final BufferOutputStream out = new BufferOutputStream();
+  private final JsonGenerator generator;
+
+  /**
+   * Start writing a list response.
+   * @param response response; must not have been written to
+   * @param property name of the array property
+   */
+  EntryJsonWriter(HttpServerResponse response, String property) {
+    this.response = response;
+    try {
+      generator = FACTORY.createGenerator(out);
+      generator.writeStartObject();
+      generator.writeFieldName(property);
+      generator.writeStartArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Add entry of row to buffer.
+   * @param row row with id, created, type, sorting_field and status
+   */
+  void write(Row row) {
+    try {
+      generator.writeStartObject();
+      UUID id = row.getUUID("id");
+      generator.writeStringField("id", id.toString());
+      LocalDateTime created = row.getLocalDateTime("created");
+      generator.writeStringField("created",
+          created.atOffset(ZoneOffset.UTC).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+      generator.writeStringField("type", row.getString("type"));
+      String sortingField = row.getString("sorting_field");
+      if (sortingField != null) {
+        generator.writeStringField("sortingField", sortingField);
+      }
+      generator.writeStringField("status", row.getString("status"));
+      generator.writeEndObject();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Write buffered entries to response.
+   */
+  void flush() {
+    try {
+      generator.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Buffer buffer = out.take();
+    if (buffer.length() > 0) {
+      response.write(buffer);
+    }
+  }
+
+  /**
+   * Complete response with resultInfo.
+   * @param resultInfo result information
+   */
+  void end(JsonObject resultInfo) {
+    try {
+      generator.writeEndArray();
+      generator.writeFieldName("resultInfo");
+      generator.writeRawValue(resultInfo.encode());
+      generator.writeEndObject();
+      generator.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    response.end(out.take());
+  }
+
+  private static final class BufferOutputStream extends OutputStream {
+    private Buffer buffer = Buffer.buffer();
+
+    @Override
+    public void write(int b) {
+      buffer.appendByte((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      buffer.appendBytes(b, off, len);
+    }
+
+    Buffer take() {
+      Buffer result = buffer;
+      buffer = Buffer.buffer();
+      return result;
+    }
+  }
+}
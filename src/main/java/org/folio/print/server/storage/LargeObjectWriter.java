@@ -0,0 +1,80 @@
+package org.folio.print.server.storage;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+
+/**
+ * Writes a stream to a PostgreSQL large object in bounded chunks.
+ *
+ * <p>Used to store content that should not be held in memory as a whole. The large
+ * object is only a staging area: callers copy it into a bytea column with
+ * {@code lo_get} and unlink it in the same transaction.
+ */
+class LargeObjectWriter {
+
+  static final int CHUNK_SIZE = 1024 * 1024;
+
+  private final SqlConnection connection;
+  private final ReadStream<Buffer> stream;
+  private final Promise<Long> promise = Promise.promise();
+  private Buffer pending = Buffer.buffer();
+  private long oid;
+  private long offset;
+
+  private LargeObjectWriter(SqlConnection connection, ReadStream<Buffer> stream) {
+    this.connection = connection;
+    this.stream = stream;
+  }
+
+  /**
+   * Create large object with the content of stream.
+   * @param connection connection with open transaction
+   * @param stream content; paused while chunks are written
+   * @return async result with large object identifier
+   */
+  static Future<Long> write(SqlConnection connection, ReadStream<Buffer> stream) {
+    stream.pause();
+    return new LargeObjectWriter(connection, stream).start();
+  }
+
+  private Future<Long> start() {
+    return connection.query("SELECT lo_create(0)::bigint").execute()
+        .compose(rowSet -> {
+          oid = rowSet.iterator().next().getLong(0);
+          stream.exceptionHandler(promise::tryFail);
+          stream.endHandler(x -> writeChunk()
+              .onSuccess(y -> promise.tryComplete(oid))
+              .onFailure(promise::tryFail));
+          stream.handler(this::handle);
+          stream.resume();
+          return promise.future();
+        });
+  }
+
+  private void handle(Buffer buffer) {
+    pending.appendBuffer(buffer);
+    if (pending.length() >= CHUNK_SIZE) {
+      stream.pause();
+      writeChunk()
+          .onSuccess(x -> stream.resume())
+          .onFailure(promise::tryFail);
+    }
+  }
+
+  private Future<Void> writeChunk() {
+    if (pending.length() == 0) {
+      return Future.succeededFuture();
+    }
+    Buffer chunk = pending;
+    pending = Buffer.buffer();
+    long position = offset;
+    offset += chunk.length();
+    return connection.preparedQuery("SELECT lo_put($1::bigint::oid, $2::bigint, $3::bytea)")
+        .execute(Tuple.of(oid, position, chunk))
+        .mapEmpty();
+  }
+}
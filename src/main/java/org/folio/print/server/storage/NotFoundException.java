@@ -4,4 +4,8 @@ public class NotFoundException extends RuntimeException {
   public NotFoundException() {
     super("Not Found");
   }
+
+  public NotFoundException(String msg) {
+    super(msg);
+  }
 }
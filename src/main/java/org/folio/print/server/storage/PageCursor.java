@@ -0,0 +1,176 @@
+package org.folio.print.server.storage;
+
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset paging for entry lists.
+ *
+ * <p>A page ends with the sort key values and id of its last row. They are handed to
+ * the client as an opaque token, and the next page starts right after that row instead
+ * of skipping OFFSET rows. The id is always the last sort key, so rows with equal sort
+ * values are still in a stable order.
+ */
+final class PageCursor {
+
+  private static final String ID = "id";
+  private static final String CREATED = "created";
+  private static final Set<String> COLUMNS = Set.of(ID, CREATED, "type", "sorting_field",
+      "status");
+
+  private final List<SortKey> keys;
+
+  private record SortKey(String expression, String column, boolean descending) {
+  }
+
+  private PageCursor(List<SortKey> keys) {
+    this.keys = keys;
+  }
+
+  /**
+   * Create cursor for ORDER BY clause as generated from CQL.
+   * @param orderBy ORDER BY clause without the keywords; null for no sorting
+   * @return cursor
+   */
+  static PageCursor of(String orderBy) {
+    List<SortKey> keys = new ArrayList<>();
+    if (orderBy != null && !orderBy.isBlank()) {
+      for (String part : orderBy.split(",")) {
+        String expression = part.trim();
+        String[] tokens = expression.split("\\s+");
+        String column = COLUMNS.contains(tokens[0]) ? tokens[0] : null;
+        boolean descending = false;
+        for (int i = 1; i < tokens.length; i++) {
+          descending |= "DESC".equalsIgnoreCase(tokens[i]);
+        }
+        keys.add(new SortKey(expression, column, descending));
+      }
+    }
+    if (keys.stream().noneMatch(key -> ID.equals(key.column()))) {
+      keys.add(new SortKey(ID, ID, false));
+    }
+    return new PageCursor(keys);
+  }
+
+  /**
+   * ORDER BY clause, including id as tie breaker.
+   * @return clause without the keywords
+   */
+  String orderBy() {
+    return keys.stream().map(SortKey::expression).collect(Collectors.joining(", "));
+  }
+
+  /**
+   * Whether all sort keys are plain columns, so that keyset paging is possible.
+   * @return true if supported
+   */
+  boolean isSupported() {
+    return keys.stream().allMatch(key -> key.column() != null);
+  }
+
+  /**
+   * WHERE condition for the rows following the token.
+   * @param token token as returned by {@link #token(Row)}
+   * @param tuple parameters; values of the token are added
+   * @return SQL condition
+   * @throws EntryException if token is invalid or does not match the sort keys
+   */
+  String condition(String token, Tuple tuple) {
+    if (!isSupported()) {
+      throw new EntryException("after is not supported for this sort order");
+    }
+    return after(0, decode(token), tuple);
+  }
+
+  private String after(int i, List<Object> values, Tuple tuple) {
+    SortKey key = keys.get(i);
+    String column = key.column();
+    Object value = values.get(i);
+    String param = null;
+    if (value != null) {
+      tuple.addValue(value);
+      param = "$" + tuple.size();
+    }
+    // NULLs sort last in ascending order and first in descending order
+    String beyond;
+    if (key.descending()) {
+      beyond = value == null ? column + " IS NOT NULL" : column + " < " + param;
+    } else {
+      beyond = value == null ? null : "(" + column + " > " + param + " OR " + column + " IS NULL)";
+    }
+    if (i == keys.size() - 1) {
+      return beyond == null ? "FALSE" : beyond;
+    }
+    String equal = value == null ? column + " IS NULL" : column + " = " + param;
+    String rest = "(" + equal + " AND " + after(i + 1, values, tuple) + ")";
+    return beyond == null ? rest : "(" + beyond + " OR " + rest + ")";
+  }
+
+  /**
+   * Token for continuing after row.
+   * @param row last row of page; must have all sort key columns
+   * @return token; null if keyset paging is not supported for the sort keys
+   */
+  String token(Row row) {
+    if (!isSupported()) {
+      return null;
+    }
+    JsonArray values = new JsonArray();
+    for (SortKey key : keys) {
+      Object value = row.getValue(key.column());
+      values.add(value == null ? null : value.toString());
+    }
+    String json = new JsonObject().put("s", signature()).put("v", values).encode();
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private List<Object> decode(String token) {
+    try {
+      JsonObject json = new JsonObject(
+          new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+      JsonArray values = json.getJsonArray("v");
+      if (!signature().equals(json.getString("s")) || values == null
+          || values.size() != keys.size()) {
+        throw new EntryException("after does not match sort order");
+      }
+      List<Object> result = new ArrayList<>();
+      for (int i = 0; i < keys.size(); i++) {
+        result.add(parse(keys.get(i).column(), values.getString(i)));
+      }
+      return result;
+    } catch (IllegalArgumentException | DecodeException | ClassCastException
+             | DateTimeParseException e) {
+      throw new EntryException("Invalid after: " + token);
+    }
+  }
+
+  private static Object parse(String column, String value) {
+    if (value == null) {
+      return null;
+    }
+    return switch (column) {
+      case ID -> UUID.fromString(value);
+      case CREATED -> LocalDateTime.parse(value);
+      default -> value;
+    };
+  }
+
+  private String signature() {
+    return keys.stream()
+        .map(key -> key.column() + (key.descending() ? " DESC" : ""))
+        .collect(Collectors.joining(","));
+  }
+}
@@ -0,0 +1,13 @@
+package org.folio.print.server.storage;
+
+import java.util.UUID;
+
+/**
+ * Print entry waiting to be rendered.
+ *
+ * @param id entry identifier
+ * @param source HTML to render
+ * @param attempts number of failed rendering attempts so far
+ */
+public record PendingEntry(UUID id, String source, int attempts) {
+}
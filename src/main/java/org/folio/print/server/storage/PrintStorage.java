@@ -1,11 +1,15 @@
 package org.folio.print.server.storage;
 
 import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.OpenOptions;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.pgclient.PgException;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.RowIterator;
@@ -18,13 +22,22 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
-import org.apache.commons.lang3.tuple.Pair;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.print.server.data.PageIndex;
 import org.folio.print.server.data.PrintEntry;
+import org.folio.print.server.data.PrintEntryStatus;
 import org.folio.print.server.data.PrintEntryType;
 import org.folio.tlib.postgres.PgCqlDefinition;
 import org.folio.tlib.postgres.PgCqlQuery;
@@ -39,12 +52,75 @@ public class PrintStorage {
 
   private static final String CREATE_IF_NO_EXISTS = "CREATE TABLE IF NOT EXISTS ";
   private static final String WHERE_BY_ID = " WHERE id = $1";
-  private static final String WHERE_BY_IDS = " WHERE id in (%s)";
+  private static final String WHERE_BY_IDS = " WHERE id = ANY($1::uuid[])";
+  private static final int DELETE_CHUNK_SIZE = 1000;
+  private static final int MAX_FETCH_SIZE = 1000;
+  private static final String WHERE_PENDING =
+      " WHERE status = '" + PrintEntryStatus.PENDING + "'";
+  /**
+   * Assignments that mark an entry as rendered from its source.
+   */
+  private static final String RENDERED_ASSIGNMENTS = " status = '" + PrintEntryStatus.RENDERED
+      + "', render_after = NULL, render_error = NULL";
+  /**
+   * Assignments for content set by a client; the source and page index do not match it
+   * any more.
+   */
+  private static final String REPLACED_ASSIGNMENTS = RENDERED_ASSIGNMENTS
+      + ", source = NULL, page_index = NULL";
+
+  /**
+   * Columns of the fields exposed through CQL.
+   */
+  private static final Map<String, String> CQL_COLUMNS = Map.of(
+      "id", "id",
+      "type", "type",
+      "created", "created",
+      "sortingField", "sorting_field",
+      "status", "status");
+
+  /**
+   * Indexes for the batch query and the common list queries, by CQL field names.
+   */
+  private static final List<IndexDefinition> INDEXES = List.of(
+      new IndexDefinition("type_created", List.of("type", "created"), null),
+      new IndexDefinition("sorting_field_created", List.of("sortingField", "created"), null),
+      new IndexDefinition("single_sorting_field_created",
+          List.of("sortingField", "created", "id"), "type = '" + PrintEntryType.SINGLE + "'"));
+
+  private record IndexDefinition(String name, List<String> fields, String where) {
+  }
+
+  private static final PgCqlDefinition CQL_DEFINITION = createCqlDefinition();
+
+  private static final int CQL_CACHE_SIZE = 256;
+
+  /**
+   * CQL query translated to SQL; the parts are null if not present in the query.
+   */
+  private record CqlTranslation(String where, String orderBy) {
+  }
+
+  /**
+   * Recently used CQL queries, in access order.
+   */
+  private final Map<String, CqlTranslation> cqlCache =
+      Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CqlTranslation> eldest) {
+          return size() > CQL_CACHE_SIZE;
+        }
+      });
+
+  private final Vertx vertx;
 
   private final TenantPgPool pool;
 
   private final String printTable;
 
+  private final String renderCacheTable;
+
+  private final String tenant;
 
   /**
    * Construct storage request for a user with given okapi permissions.
@@ -53,8 +129,15 @@ public class PrintStorage {
    * @param tenant      tenant
    */
   public PrintStorage(Vertx vertx, String tenant) {
+    this.vertx = vertx;
     this.pool = TenantPgPool.pool(vertx, tenant);
     this.printTable = pool.getSchema() + ".printing";
+    this.renderCacheTable = pool.getSchema() + ".render_cache";
+    this.tenant = tenant;
+  }
+
+  public String getTenant() {
+    return tenant;
   }
 
   /**
@@ -63,20 +146,68 @@ public class PrintStorage {
    * @return async result
    */
   public Future<Void> init() {
-    return pool.execute(List.of(
-        CREATE_IF_NO_EXISTS + printTable
-            + "(id uuid NOT NULL PRIMARY KEY,"
-            + " created TIMESTAMP NOT NULL,"
-            + " type VARCHAR NOT NULL,"
-            + " sorting_field VARCHAR NULL,"
-            + " content VARCHAR NOT NULL"
-            + ")"
-    ));
+    List<String> statements = new ArrayList<>();
+    statements.add(CREATE_IF_NO_EXISTS + printTable
+        + "(id uuid NOT NULL PRIMARY KEY,"
+        + " created TIMESTAMP NOT NULL,"
+        + " type VARCHAR NOT NULL,"
+        + " sorting_field VARCHAR NULL,"
+        + " content bytea NOT NULL"
+        + ")");
+    statements.add(migrateContentToBytea());
+    // columns for deferred rendering, added after the first release
+    statements.add("ALTER TABLE " + printTable
+        + " ADD COLUMN IF NOT EXISTS status VARCHAR NOT NULL DEFAULT '"
+        + PrintEntryStatus.RENDERED + "',"
+        + " ADD COLUMN IF NOT EXISTS source TEXT NULL,"
+        + " ADD COLUMN IF NOT EXISTS attempts INT NOT NULL DEFAULT 0,"
+        + " ADD COLUMN IF NOT EXISTS render_after TIMESTAMPTZ NULL,"
+        + " ADD COLUMN IF NOT EXISTS render_error VARCHAR NULL,"
+        + " ADD COLUMN IF NOT EXISTS page_index JSONB NULL");
+    // PDF files are compressed already; out of line storage without compression
+    // lets substring() read a range without reading the whole value
+    statements.add("ALTER TABLE " + printTable + " ALTER COLUMN content SET STORAGE EXTERNAL");
+    INDEXES.forEach(index -> statements.add(createIndex(index)));
+    statements.add("CREATE INDEX IF NOT EXISTS printing_pending_idx ON " + printTable
+        + " (render_after) WHERE status = '" + PrintEntryStatus.PENDING + "'");
+    statements.add(CREATE_IF_NO_EXISTS + renderCacheTable
+        + "(hash VARCHAR NOT NULL PRIMARY KEY,"
+        + " content bytea NOT NULL,"
+        + " created TIMESTAMPTZ NOT NULL DEFAULT now()"
+        + ")");
+    return pool.execute(statements);
+  }
+
+  private String createIndex(IndexDefinition index) {
+    String columns = index.fields().stream()
+        .map(CQL_COLUMNS::get)
+        .collect(Collectors.joining(", "));
+    return "CREATE INDEX IF NOT EXISTS printing_" + index.name() + "_idx ON " + printTable
+        + " (" + columns + ")"
+        + (index.where() == null ? "" : " WHERE " + index.where());
+  }
+
+  /**
+   * Converts content of tables created by earlier versions from hex encoded
+   * VARCHAR to bytea. Does nothing when the column is already bytea.
+   */
+  private String migrateContentToBytea() {
+    return "DO $$ BEGIN"
+        + " IF EXISTS (SELECT 1 FROM information_schema.columns"
+        + " WHERE table_schema = '" + pool.getSchema() + "' AND table_name = 'printing'"
+        + " AND column_name = 'content' AND data_type = 'character varying') THEN"
+        + " ALTER TABLE " + printTable + " ALTER COLUMN content TYPE bytea USING"
+        + " CASE WHEN content ~ '^([0-9A-Fa-f]{2})*$' THEN decode(content, 'hex')"
+        + " ELSE convert_to(content, 'UTF8') END;"
+        + " END IF;"
+        + " END $$";
   }
 
   PrintEntry fromRow(Row row) {
     PrintEntry entry = fromRowWithoutContent(row);
-    entry.setContent(row.getString("content"));
+    Buffer content = row.getBuffer("content");
+    entry.setContent(content == null ? null : content.getBytes());
+    entry.setSource(row.getString("source"));
     return entry;
   }
 
@@ -86,6 +217,7 @@ public class PrintStorage {
     entry.setCreated(row.getLocalDateTime("created").atZone(ZoneId.of(ZoneOffset.UTC.getId())));
     entry.setType(PrintEntryType.valueOf(row.getString("type")));
     entry.setSortingField(row.getString("sorting_field"));
+    entry.setStatus(PrintEntryStatus.valueOf(row.getString("status")));
     return entry;
   }
 
@@ -93,22 +225,83 @@ public class PrintStorage {
    * Create print entry.
    *
    * @param entry to be created
-   * @return async result with success if created; failed otherwise
+   * @return async result with success if created; failed otherwise; the exception of
+   *     {@link #entryExists(UUID)} if the id is in use
    */
   public Future<Void> createEntry(PrintEntry entry) {
-    return pool.preparedQuery(
-            "INSERT INTO " + printTable
-                + " (id, created, type, sorting_field, content)"
-                + " VALUES ($1, $2, $3, $4, $5)"
-        )
-        .execute(Tuple.of(entry.getId(), toLocalDateTime(entry.getCreated()),
-            entry.getType(), entry.getSortingField(), entry.getContent()))
+    return pool.preparedQuery(insertEntrySql())
+        .execute(entryTuple(entry))
         .map(rowSet -> {
           if (rowSet.rowCount() == 0) {
             throw new EntryException("Failed to create");
           }
           return null;
-        });
+        })
+        .recover(e -> {
+          if (e instanceof PgException pgException
+              && pgException.getMessage().contains("(23505)")) {
+            return Future.failedFuture(entryExists(entry.getId()));
+          }
+          return Future.failedFuture(e);
+        })
+        .mapEmpty();
+  }
+
+  /**
+   * Failure for an entry whose id is in use, the same whether the entry was inserted on
+   * its own or with others.
+   * @param id entry identifier
+   * @return exception
+   */
+  public static EntryException entryExists(UUID id) {
+    return new EntryException("Entry " + id + " already exists");
+  }
+
+  /**
+   * Create print entries in one transaction.
+   *
+   * <p>The entries are sent as one batch of executions of the same prepared statement,
+   * so the whole list costs a single round-trip. Entries with an id that already exists
+   * are left unchanged.
+   *
+   * @param entries entries to be created
+   * @return async result with, for each entry, whether it was created
+   */
+  public Future<List<Boolean>> createEntries(List<PrintEntry> entries) {
+    if (entries.isEmpty()) {
+      return Future.succeededFuture(List.of());
+    }
+    List<Tuple> tuples = entries.stream().map(this::entryTuple).toList();
+    String sql = insertEntrySql() + " ON CONFLICT (id) DO NOTHING";
+    return pool.getConnection()
+        .compose(connection -> connection.begin()
+            .compose(tx -> connection.preparedQuery(sql)
+                .executeBatch(tuples)
+                .compose(rowSet -> tx.commit().map(x -> {
+                  List<Boolean> created = new ArrayList<>();
+                  for (RowSet<Row> res = rowSet; res != null; res = res.next()) {
+                    created.add(res.rowCount() > 0);
+                  }
+                  return created;
+                }))
+                .onFailure(e -> tx.rollback()))
+            .eventually(x -> connection.close()));
+  }
+
+  private String insertEntrySql() {
+    return "INSERT INTO " + printTable
+        + " (id, created, type, sorting_field, content, source)"
+        + " VALUES ($1, $2, $3, $4, $5, $6)";
+  }
+
+  private Tuple entryTuple(PrintEntry entry) {
+    return Tuple.of(entry.getId(), toLocalDateTime(entry.getCreated()),
+        entry.getType(), entry.getSortingField(), toBuffer(entry.getContent()),
+        entry.getSource());
+  }
+
+  private static Buffer toBuffer(byte[] content) {
+    return content == null ? null : Buffer.buffer(content);
   }
 
   private LocalDateTime toLocalDateTime(ZonedDateTime zonedDateTime) {
@@ -145,6 +338,89 @@ public class PrintStorage {
         });
   }
 
+  /**
+   * Get page index of print entry.
+   *
+   * @param id entry identifier
+   * @return async result with page index; NotFoundException if entry is not found or has
+   *     no page index
+   */
+  public Future<PageIndex> getPageIndex(UUID id) {
+    return pool.preparedQuery("SELECT page_index FROM " + printTable + WHERE_BY_ID)
+        .execute(Tuple.of(id))
+        .map(rowSet -> {
+          RowIterator<Row> iterator = rowSet.iterator();
+          if (!iterator.hasNext()) {
+            throw new NotFoundException();
+          }
+          JsonObject pageIndex = iterator.next().getJsonObject("page_index");
+          if (pageIndex == null) {
+            throw new NotFoundException("No page index for entry " + id);
+          }
+          return pageIndex.mapTo(PageIndex.class);
+        });
+  }
+
+  /**
+   * Get content of print entry.
+   *
+   * @param id entry identifier
+   * @return async result with content; NotFoundException if not found
+   */
+  public Future<EntryContent> getContent(UUID id) {
+    return pool.preparedQuery("SELECT xmin::text AS version, octet_length(content) AS length,"
+            + " content FROM " + printTable + WHERE_BY_ID)
+        .execute(Tuple.of(id))
+        .map(PrintStorage::toEntryContent);
+  }
+
+  /**
+   * Get version and length of content of print entry.
+   *
+   * @param id entry identifier
+   * @return async result with content without bytes; NotFoundException if not found
+   */
+  public Future<EntryContent> getContentInfo(UUID id) {
+    return pool.preparedQuery("SELECT xmin::text AS version, octet_length(content) AS length,"
+            + " NULL::bytea AS content FROM " + printTable + WHERE_BY_ID)
+        .execute(Tuple.of(id))
+        .map(PrintStorage::toEntryContent);
+  }
+
+  /**
+   * Get part of content of print entry.
+   *
+   * @param id entry identifier
+   * @param version version as returned by {@link #getContentInfo(UUID)}; null for any
+   * @param offset offset of first byte
+   * @param length number of bytes
+   * @return async result with content; NotFoundException if not found;
+   *     EntryException if the entry has changed since version
+   */
+  public Future<EntryContent> getContent(UUID id, String version, long offset, long length) {
+    return pool.preparedQuery("SELECT xmin::text AS version, octet_length(content) AS length,"
+            + " substring(content FROM $2::int FOR $3::int) AS content FROM " + printTable
+            + WHERE_BY_ID)
+        .execute(Tuple.of(id, Math.toIntExact(offset + 1), Math.toIntExact(length)))
+        .map(rowSet -> {
+          EntryContent content = toEntryContent(rowSet);
+          if (version != null && !content.version().equals(version)) {
+            throw new EntryException("Content changed while reading");
+          }
+          return content;
+        });
+  }
+
+  private static EntryContent toEntryContent(RowSet<Row> rowSet) {
+    RowIterator<Row> iterator = rowSet.iterator();
+    if (!iterator.hasNext()) {
+      throw new NotFoundException();
+    }
+    Row row = iterator.next();
+    return new EntryContent(row.getString("version"), row.getLong("length"),
+        row.getBuffer("content"));
+  }
+
   /**
    * Delete print entry.
    *
@@ -152,25 +428,23 @@ public class PrintStorage {
    * @return async result; exception if not found or forbidden
    */
   public Future<Void> deleteEntry(UUID id) {
-    return getEntryWoCheck(id).compose(entry -> {
-      if (entry == null) {
-        return Future.failedFuture(new NotFoundException());
-      }
-      return pool.preparedQuery(
-              "DELETE FROM " + printTable + WHERE_BY_ID)
-          .execute(Tuple.of(id))
-          .map(res -> {
-            if (res.rowCount() == 0) {
-              throw new NotFoundException();
-            }
-            return null;
-          });
-    });
+    return pool.preparedQuery(
+            "DELETE FROM " + printTable + WHERE_BY_ID + " RETURNING id")
+        .execute(Tuple.of(id))
+        .map(res -> {
+          if (res.size() == 0) {
+            throw new NotFoundException();
+          }
+          return null;
+        });
   }
 
   /**
    * Delete print entries by ID list.
    *
+   * <p>Lists longer than {@value #DELETE_CHUNK_SIZE} are deleted in chunks in one
+   * transaction.
+   *
    * @param uuids entry identifiers
    * @return async result; exception if not found or forbidden
    */
@@ -178,17 +452,75 @@ public class PrintStorage {
     if (uuids.isEmpty()) {
       return Future.succeededFuture();
     }
-    Tuple tuple = Tuple.tuple();
-    StringBuilder replacement = new StringBuilder();
-    int counter = 1;
-    for (UUID id : uuids) {
-      tuple.addUUID(id);
-      replacement.append((replacement.isEmpty()) ? "$" + counter++ : ", $" + counter++);
+    if (uuids.size() <= DELETE_CHUNK_SIZE) {
+      return pool.preparedQuery("DELETE FROM " + printTable + WHERE_BY_IDS)
+          .execute(idsTuple(uuids))
+          .mapEmpty();
     }
-    return pool.preparedQuery(
-              "DELETE FROM " + printTable + String.format(WHERE_BY_IDS, replacement))
-          .execute(tuple)
-          .map(res -> null);
+    return pool.getConnection()
+        .compose(connection -> connection.begin()
+            .compose(tx -> deleteEntries(connection, uuids)
+                .compose(x -> tx.commit())
+                .onFailure(e -> tx.rollback()))
+            .eventually(x -> connection.close()));
+  }
+
+  /**
+   * Delete print entries matching CQL query.
+   *
+   * @param cqlQuery CQL query; sorting is ignored
+   * @return async result with number of entries deleted
+   */
+  public Future<Integer> deleteEntriesByQuery(String cqlQuery) {
+    String where = translateCql(cqlQuery).where();
+    String sql = "DELETE FROM " + printTable + (where == null ? "" : " WHERE " + where);
+    log.debug("deleteEntriesByQuery: SQL: {}", sql);
+    return pool.query(sql)
+        .execute()
+        .map(RowSet::rowCount);
+  }
+
+  private static Tuple idsTuple(List<UUID> uuids) {
+    return Tuple.of(uuids.toArray(new UUID[0]));
+  }
+
+  /**
+   * Update some fields of print entry.
+   *
+   * <p>Only the columns of the given fields are in the UPDATE statement; the content
+   * column is never written.
+   *
+   * @param id entry identifier
+   * @param entry new values
+   * @param fields fields to update; any of "created", "type" and "sortingField"
+   * @return async result; NotFoundException if entry does not exist
+   */
+  public Future<Void> patchEntry(UUID id, PrintEntry entry, Set<String> fields) {
+    Tuple tuple = Tuple.of(id);
+    List<String> assignments = new ArrayList<>();
+    if (fields.contains("created")) {
+      tuple.addValue(toLocalDateTime(entry.getCreated()));
+      assignments.add(CQL_COLUMNS.get("created") + " = $" + tuple.size());
+    }
+    if (fields.contains("type")) {
+      tuple.addValue(entry.getType());
+      assignments.add(CQL_COLUMNS.get("type") + " = $" + tuple.size());
+    }
+    if (fields.contains("sortingField")) {
+      tuple.addValue(entry.getSortingField());
+      assignments.add(CQL_COLUMNS.get("sortingField") + " = $" + tuple.size());
+    }
+    String sql = assignments.isEmpty()
+        ? "SELECT id FROM " + printTable + WHERE_BY_ID
+        : "UPDATE " + printTable + " SET " + String.join(", ", assignments) + WHERE_BY_ID;
+    return pool.preparedQuery(sql)
+        .execute(tuple)
+        .map(rowSet -> {
+          if (rowSet.rowCount() == 0) {
+            throw new NotFoundException();
+          }
+          return null;
+        });
   }
 
   /**
@@ -200,11 +532,11 @@ public class PrintStorage {
   public Future<Void> updateEntry(PrintEntry entry) {
     return pool.preparedQuery(
             "UPDATE " + printTable
-                + " SET created = $2, type = $3, sorting_field = $4, content = $5"
-                + WHERE_BY_ID
+                + " SET created = $2, type = $3, sorting_field = $4, content = $5,"
+                + REPLACED_ASSIGNMENTS + WHERE_BY_ID
         )
         .execute(Tuple.of(entry.getId(), toLocalDateTime(entry.getCreated()),
-            entry.getType(), entry.getSortingField(), entry.getContent()))
+            entry.getType(), entry.getSortingField(), toBuffer(entry.getContent())))
         .map(rowSet -> {
           if (rowSet.rowCount() == 0) {
             throw new NotFoundException();
@@ -225,124 +557,531 @@ public class PrintStorage {
   /**
    * Get entries with optional cqlQuery.
    *
+   * <p>With {@code after}, the page starts right after the last entry of the previous
+   * page (keyset paging) and offset is ignored. A full page ends with
+   * {@code resultInfo.after} for fetching the next page.
+   *
    * @param response HTTP response for result
    * @param cqlQuery CQL cqlQuery; null if no cqlQuery is provided
    * @param offset   starting offset of entries returned
    * @param limit    maximum number of entries returned
+   * @param after    {@code resultInfo.after} of previous page; null for first page
+   * @param count    how totalRecords is computed
    * @return async result
    */
   public Future<Void> getEntries(HttpServerResponse response, String cqlQuery,
-                                 int offset, int limit) {
+                                 int offset, int limit, String after, CountMode count) {
 
-    Pair<String, String> sqlQuery = createSqlQuery(cqlQuery, offset, limit);
-    String countQuery = "SELECT COUNT(*) FROM " + sqlQuery.getRight();
+    SqlQuery sqlQuery = createSqlQuery(cqlQuery, offset, limit, after);
     return pool.getConnection()
         .compose(connection ->
-            streamResult(response, connection, sqlQuery.getLeft(), countQuery)
+            streamResult(response, connection, sqlQuery, count)
                 .onFailure(x -> connection.close())
         );
   }
 
+  /**
+   * Stream rows of query to response.
+   *
+   * <p>Rows are fetched in batches of the page size, up to {@value #MAX_FETCH_SIZE}, and
+   * each batch is written to the response in one piece.
+   *
+   * <p>The row stream is paused while the write queue of the response is full, so a slow
+   * client does not make the result pile up in memory. If the client goes away, the
+   * stream is closed and the connection released.
+   * @param response HTTP response
+   * @param connection connection; closed when done
+   * @param sqlQuery query
+   * @param count count mode
+   * @return async result; succeeds when streaming has started
+   */
   Future<Void> streamResult(HttpServerResponse response,
-                            SqlConnection connection, String query, String cnt) {
+                            SqlConnection connection, SqlQuery sqlQuery, CountMode count) {
 
     String property = "items";
-    Tuple tuple = Tuple.tuple();
-    int sqlStreamFetchSize = 100;
+    int sqlStreamFetchSize = Math.max(1, Math.min(sqlQuery.limit(), MAX_FETCH_SIZE));
 
-    return connection.prepare("SELECT id, created, type, sorting_field FROM " + query)
+    return connection.prepare("SELECT id, created, type, sorting_field, status FROM "
+            + sqlQuery.query())
         .compose(pq ->
             connection.begin().map(tx -> {
+              AtomicBoolean done = new AtomicBoolean();
+              Runnable release = () -> {
+                if (!done.getAndSet(true)) {
+                  tx.commit().eventually(y -> connection.close());
+                }
+              };
               response.setChunked(true);
               response.putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
-              response.write("{ \"" + property + "\" : [");
-              AtomicBoolean first = new AtomicBoolean(true);
-              RowStream<Row> stream = pq.createStream(sqlStreamFetchSize, tuple);
+              EntryJsonWriter writer = new EntryJsonWriter(response, property);
+              AtomicInteger rows = new AtomicInteger();
+              AtomicReference<Row> last = new AtomicReference<>();
+              RowStream<Row> stream = pq.createStream(sqlStreamFetchSize, sqlQuery.tuple());
+              response.closeHandler(x -> {
+                if (!done.get()) {
+                  log.info("streamResult:: client closed connection after {} rows", rows.get());
+                  stream.close().onComplete(y -> release.run());
+                }
+              });
               stream.handler(row -> {
-                if (!first.getAndSet(false)) {
-                  response.write(",");
+                last.set(row);
+                writer.write(row);
+                if (rows.incrementAndGet() % sqlStreamFetchSize != 0) {
+                  return;
+                }
+                writer.flush();
+                if (response.writeQueueFull()) {
+                  stream.pause();
+                  response.drainHandler(x -> stream.resume());
                 }
-                PrintEntry entry = fromRowWithoutContent(row);
-                response.write(JsonObject.mapFrom(entry).encode());
               });
               stream.endHandler(end -> {
-                Future<RowSet<Row>> cntFuture = cnt != null
-                    ? connection.preparedQuery(cnt).execute(tuple)
-                    : Future.succeededFuture(null);
-                cntFuture
-                    .onSuccess(cntRes -> resultFooter(response, cntRes, null))
+                String next = rows.get() == sqlQuery.limit() && rows.get() > 0
+                    ? sqlQuery.cursor().token(last.get()) : null;
+                count(connection, sqlQuery, count)
+                    .onSuccess(total -> resultFooter(writer, response, total, next, null))
                     .onFailure(f -> {
                       log.error(f.getMessage(), f);
-                      resultFooter(response, null, f.getMessage());
+                      resultFooter(writer, response, null, next, f.getMessage());
                     })
-                    .eventually(x -> tx.commit().compose(y -> connection.close()));
+                    .onComplete(x -> release.run());
               });
               stream.exceptionHandler(e -> {
                 log.error("stream error {}", e.getMessage(), e);
-                resultFooter(response, null, e.getMessage());
-                tx.commit().compose(y -> connection.close());
+                resultFooter(writer, response, null, null, e.getMessage());
+                release.run();
               });
               return null;
             })
         );
   }
 
-  void resultFooter(HttpServerResponse response, RowSet<Row> rowSet, String diagnostic) {
+  /**
+   * Count rows matching the query, ignoring paging.
+   *
+   * <p>The estimate is the row count the planner expects for the query. It comes from
+   * table statistics, so it costs no scan, but it lags behind recent changes and can be
+   * far off for selective conditions.
+   * @param connection connection
+   * @param sqlQuery query
+   * @param count count mode
+   * @return async result with count; null for {@link CountMode#NONE}
+   */
+  private Future<Long> count(SqlConnection connection, SqlQuery sqlQuery, CountMode count) {
+    switch (count) {
+      case EXACT:
+        return connection.query("SELECT COUNT(*) FROM " + sqlQuery.from()).execute()
+            .map(rowSet -> rowSet.iterator().next().getLong(0));
+      case ESTIMATE:
+        return connection.query("EXPLAIN (FORMAT JSON) SELECT 1 FROM " + sqlQuery.from())
+            .execute()
+            .map(rowSet -> {
+              Object plan = rowSet.iterator().next().getValue(0);
+              JsonArray plans = plan instanceof JsonArray array
+                  ? array : new JsonArray(plan.toString());
+              return plans.getJsonObject(0).getJsonObject("Plan").getLong("Plan Rows");
+            });
+      default:
+        return Future.succeededFuture(null);
+    }
+  }
+
+  void resultFooter(EntryJsonWriter writer, HttpServerResponse response, Long totalRecords,
+                    String after, String diagnostic) {
+    if (response.closed()) {
+      return;
+    }
     JsonObject resultInfo = new JsonObject();
-    if (rowSet != null) {
-      int pos = 0;
-      Row row = rowSet.iterator().next();
-      int count = row.getInteger(pos);
-      resultInfo.put("totalRecords", count);
+    if (totalRecords != null) {
+      resultInfo.put("totalRecords", totalRecords);
+    }
+    if (after != null) {
+      resultInfo.put("after", after);
     }
     JsonArray diagnostics = new JsonArray();
     if (diagnostic != null) {
       diagnostics.add(new JsonObject().put("message", diagnostic));
     }
     resultInfo.put("diagnostics", diagnostics);
-    response.write("], \"resultInfo\": " + resultInfo.encode() + "}");
-    response.end();
+    writer.end(resultInfo);
   }
 
   /**
-   * Get print entries as list by query.
-   * @param cqlQuery Query to perform
-   * @param offset Offset
-   * @param limit Limit
-   * @return Result list
+   * Get a connection for operations that must share one transaction.
+   * @return async result with connection; caller must close it
    */
-  public Future<List<PrintEntry>> getEntriesByQuery(String cqlQuery, int offset, int limit) {
+  public Future<SqlConnection> getConnection() {
+    return pool.getConnection();
+  }
 
-    Pair<String, String> sqlQuery = createSqlQuery(cqlQuery, offset, limit);
+  /**
+   * Create print entry whose content is rendered later from its source.
+   *
+   * <p>The entry gets status PENDING and empty content.
+   * @param entry entry to be created, with source; content and status are ignored
+   * @return async result
+   */
+  public Future<Void> createPendingEntry(PrintEntry entry) {
+    return pool.preparedQuery("INSERT INTO " + printTable
+            + " (id, created, type, sorting_field, content, status, source, render_after)"
+            + " VALUES ($1, $2, $3, $4, ''::bytea, '" + PrintEntryStatus.PENDING + "', $5,"
+            + " now())")
+        .execute(Tuple.of(entry.getId(), toLocalDateTime(entry.getCreated()),
+            entry.getType(), entry.getSortingField(), entry.getSource()))
+        .mapEmpty();
+  }
 
-    return pool.preparedQuery("SELECT * FROM " + sqlQuery.getLeft())
-        .execute()
+  /**
+   * Claim pending entries that are due for rendering.
+   *
+   * <p>Claimed entries are not due again until the lease has passed, so other renderers,
+   * in this or another module instance, do not claim them meanwhile. If the renderer
+   * goes away, they are claimed again after the lease.
+   * @param limit maximum number of entries
+   * @param leaseMillis milliseconds the claim lasts
+   * @return async result with claimed entries, oldest first
+   */
+  public Future<List<PendingEntry>> claimPendingEntries(int limit, long leaseMillis) {
+    return pool.preparedQuery("UPDATE " + printTable
+            + " SET render_after = now() + $2::bigint * interval '1 millisecond'"
+            + " WHERE id IN (SELECT id FROM " + printTable + WHERE_PENDING
+            + " AND render_after <= now() ORDER BY render_after LIMIT $1"
+            + " FOR UPDATE SKIP LOCKED)"
+            + " RETURNING id, source, attempts")
+        .execute(Tuple.of(limit, leaseMillis))
+        .map(rowSet -> {
+          List<PendingEntry> entries = new ArrayList<>();
+          rowSet.forEach(row -> entries.add(new PendingEntry(row.getUUID("id"),
+              row.getString("source"), row.getInteger("attempts"))));
+          return entries;
+        });
+  }
+
+  /**
+   * Claim pending SINGLE entries created in a time window, whether they are due or not.
+   *
+   * <p>Used before batch creation, which must not pass over entries that are leased by
+   * another renderer or wait for a retry. Entries locked at the moment are skipped.
+   * @param limit maximum number of entries
+   * @param leaseMillis milliseconds the claim lasts
+   * @param from only entries created after this time (UTC)
+   * @param to only entries created at or before this time (UTC)
+   * @return async result with claimed entries, oldest first
+   */
+  public Future<List<PendingEntry>> claimPendingEntries(int limit, long leaseMillis,
+      LocalDateTime from, LocalDateTime to) {
+
+    return pool.preparedQuery("UPDATE " + printTable
+            + " SET render_after = now() + $2::bigint * interval '1 millisecond'"
+            + " WHERE id IN (SELECT id FROM " + printTable + WHERE_PENDING
+            + " AND type = '" + PrintEntryType.SINGLE + "' AND created > $3 AND created <= $4"
+            + " ORDER BY created LIMIT $1 FOR UPDATE SKIP LOCKED)"
+            + " RETURNING id, source, attempts")
+        .execute(Tuple.of(limit, leaseMillis, from, to))
+        .map(rowSet -> {
+          List<PendingEntry> entries = new ArrayList<>();
+          rowSet.forEach(row -> entries.add(new PendingEntry(row.getUUID("id"),
+              row.getString("source"), row.getInteger("attempts"))));
+          return entries;
+        });
+  }
+
+  /**
+   * Get SINGLE entries created in a time window that are not rendered.
+   * @param from only entries created after this time (UTC)
+   * @param to only entries created at or before this time (UTC)
+   * @return async result with id, status and error of each entry
+   */
+  public Future<List<JsonObject>> getUnrenderedEntries(LocalDateTime from, LocalDateTime to) {
+    return pool.preparedQuery("SELECT id, status, render_error FROM " + printTable
+            + " WHERE type = '" + PrintEntryType.SINGLE + "' AND created > $1 AND created <= $2"
+            + " AND status <> '" + PrintEntryStatus.RENDERED + "' ORDER BY created, id")
+        .execute(Tuple.of(from, to))
+        .map(rowSet -> {
+          List<JsonObject> entries = new ArrayList<>();
+          rowSet.forEach(row -> entries.add(new JsonObject()
+              .put("id", row.getUUID("id").toString())
+              .put("status", row.getString("status"))
+              .put("error", row.getString("render_error"))));
+          return entries;
+        });
+  }
+
+  /**
+   * Store rendered content of pending entry.
+   * @param id entry identifier
+   * @param content PDF document
+   * @return async result with whether the entry was still pending
+   */
+  public Future<Boolean> setRendered(UUID id, byte[] content) {
+    return pool.preparedQuery("UPDATE " + printTable
+            + " SET content = $2," + RENDERED_ASSIGNMENTS + WHERE_PENDING + " AND id = $1")
+        .execute(Tuple.of(id, toBuffer(content)))
+        .map(rowSet -> rowSet.rowCount() > 0);
+  }
+
+  /**
+   * Record failed rendering of pending entry.
+   * @param id entry identifier
+   * @param message failure message
+   * @param retryMillis milliseconds until the entry is due again; negative to give up and
+   *                    set status FAILED
+   * @return async result
+   */
+  public Future<Void> setRenderFailed(UUID id, String message, long retryMillis) {
+    PrintEntryStatus status = retryMillis < 0 ? PrintEntryStatus.FAILED
+        : PrintEntryStatus.PENDING;
+    return pool.preparedQuery("UPDATE " + printTable
+            + " SET attempts = attempts + 1, render_error = $2, status = $3,"
+            + " render_after = now() + $4::bigint * interval '1 millisecond'"
+            + WHERE_PENDING + " AND id = $1")
+        .execute(Tuple.of(id, message, status, Math.max(0, retryMillis)))
+        .mapEmpty();
+  }
+
+  /**
+   * Make pending entry due again later without counting an attempt.
+   * @param id entry identifier
+   * @param delayMillis milliseconds until the entry is due again
+   * @return async result
+   */
+  public Future<Void> postponeRendering(UUID id, long delayMillis) {
+    return pool.preparedQuery("UPDATE " + printTable
+            + " SET render_after = now() + $2::bigint * interval '1 millisecond'"
+            + WHERE_PENDING + " AND id = $1")
+        .execute(Tuple.of(id, delayMillis))
+        .mapEmpty();
+  }
+
+  /**
+   * Get PDF document rendered earlier from HTML with the given hash.
+   * @param hash hash of the HTML
+   * @param maxAgeMillis documents stored longer ago than this many milliseconds are ignored
+   * @return async result with PDF document; null if there is none
+   */
+  public Future<byte[]> getCachedPdf(String hash, long maxAgeMillis) {
+    return pool.preparedQuery("SELECT content FROM " + renderCacheTable
+            + " WHERE hash = $1 AND created > now() - $2::bigint * interval '1 millisecond'")
+        .execute(Tuple.of(hash, maxAgeMillis))
         .map(rowSet -> {
           RowIterator<Row> iterator = rowSet.iterator();
-          List<PrintEntry> results = new ArrayList<>();
-          while (iterator.hasNext()) {
-            results.add(fromRow(iterator.next()));
-          }
-          return results;
+          return iterator.hasNext() ? iterator.next().getBuffer("content").getBytes() : null;
+        });
+  }
+
+  /**
+   * Store PDF document rendered from HTML with the given hash.
+   * @param hash hash of the HTML
+   * @param content PDF document; replaces a document stored earlier with the same hash
+   * @return async result
+   */
+  public Future<Void> putCachedPdf(String hash, byte[] content) {
+    return pool.preparedQuery("INSERT INTO " + renderCacheTable + " (hash, content)"
+            + " VALUES ($1, $2)"
+            + " ON CONFLICT (hash) DO UPDATE SET content = EXCLUDED.content, created = now()")
+        .execute(Tuple.of(hash, toBuffer(content)))
+        .mapEmpty();
+  }
+
+  /**
+   * Delete cached PDF documents.
+   * @param maxAgeMillis documents stored longer ago than this many milliseconds are deleted
+   * @return async result with number of documents deleted
+   */
+  public Future<Integer> deleteCachedPdfs(long maxAgeMillis) {
+    return pool.preparedQuery("DELETE FROM " + renderCacheTable
+            + " WHERE created <= now() - $1::bigint * interval '1 millisecond'")
+        .execute(Tuple.of(maxAgeMillis))
+        .map(rowSet -> rowSet.rowCount());
+  }
+
+  /**
+   * Stream SINGLE entries for batch creation, in batch order.
+   *
+   * <p>Entries are read through a cursor, {@code fetchSize} rows at a time, and passed
+   * to handler one by one. The next entry is not read before the future returned by
+   * handler completes. Rows are locked until the transaction ends; rows locked by
+   * another transaction, such as a concurrent batch run, are skipped.
+   * @param connection connection with open transaction
+   * @param from only entries created after this time (UTC)
+   * @param to only entries created at or before this time (UTC)
+   * @param fetchSize number of rows fetched at a time
+   * @param handler called for each entry with content
+   * @return async result; failed if reading fails or handler fails
+   */
+  public Future<Void> streamBatchEntries(SqlConnection connection, LocalDateTime from,
+      LocalDateTime to, int fetchSize, Function<PrintEntry, Future<Void>> handler) {
+
+    return connection.prepare("SELECT * FROM " + printTable
+            + " WHERE type = '" + PrintEntryType.SINGLE + "' AND created > $1 AND created <= $2"
+            + " AND status = '" + PrintEntryStatus.RENDERED + "'"
+            + " ORDER BY sorting_field, created, id FOR UPDATE SKIP LOCKED")
+        .compose(pq -> {
+          Promise<Void> promise = Promise.promise();
+          AtomicReference<Future<Void>> last = new AtomicReference<>(Future.succeededFuture());
+          RowStream<Row> stream = pq.createStream(fetchSize, Tuple.of(from, to));
+          stream.handler(row -> {
+            stream.pause();
+            Future<Void> f = handler.apply(fromRow(row));
+            last.set(f);
+            f.onSuccess(x -> stream.resume())
+                .onFailure(e -> {
+                  stream.close();
+                  promise.tryFail(e);
+                });
+          });
+          stream.endHandler(end -> last.get().onSuccess(x -> promise.tryComplete()));
+          stream.exceptionHandler(promise::tryFail);
+          return promise.future();
         });
   }
 
-  private Pair<String, String> createSqlQuery(String cqlQuery, int offset, int limit) {
+  /**
+   * Create print entry with content read from a stream.
+   *
+   * <p>Content is moved to the database in chunks and is never held in memory as a whole.
+   * @param connection connection with open transaction
+   * @param entry entry to be created; content is ignored
+   * @param content entry content
+   * @param pageIndex page index of content; null for none
+   * @return async result
+   */
+  public Future<Void> createEntry(SqlConnection connection, PrintEntry entry,
+      ReadStream<Buffer> content, PageIndex pageIndex) {
+
+    return LargeObjectWriter.write(connection, content)
+        .compose(oid -> connection.preparedQuery(
+                "INSERT INTO " + printTable
+                    + " (id, created, type, sorting_field, content, page_index)"
+                    + " VALUES ($1, $2, $3, $4, lo_get($5::bigint::oid), $6)")
+            .execute(Tuple.of(entry.getId(), toLocalDateTime(entry.getCreated()),
+                entry.getType(), entry.getSortingField(), oid,
+                pageIndex == null ? null : JsonObject.mapFrom(pageIndex)))
+            .compose(rowSet -> connection.preparedQuery("SELECT lo_unlink($1::bigint::oid)")
+                .execute(Tuple.of(oid))))
+        .mapEmpty();
+  }
+
+  /**
+   * Replace content of print entry with content read from a stream.
+   *
+   * <p>The upload is rejected before it is read if the entry does not exist. Content is
+   * spooled to a temporary file before a connection is taken, so a slow client holds
+   * neither a pooled connection nor the row lock; the file is then moved to the database
+   * in chunks and is never held in memory as a whole.
+   * @param id entry identifier
+   * @param content new content
+   * @param maxSize maximum content size in bytes; 0 for no limit
+   * @return async result; NotFoundException if entry does not exist;
+   *     ContentTooLargeException if content exceeds maxSize
+   */
+  public Future<Void> updateContent(UUID id, ReadStream<Buffer> content, long maxSize) {
+    content.pause();
+    return pool.preparedQuery("SELECT id FROM " + printTable + WHERE_BY_ID)
+        .execute(Tuple.of(id))
+        .compose(rowSet -> {
+          if (rowSet.size() == 0) {
+            return Future.failedFuture(new NotFoundException());
+          }
+          return ContentSpooler.spool(vertx, content, maxSize);
+        })
+        .compose(path -> updateContent(id, path)
+            .eventually(x -> vertx.fileSystem().delete(path)));
+  }
+
+  private Future<Void> updateContent(UUID id, String path) {
+    return vertx.fileSystem().open(path, new OpenOptions().setRead(true))
+        .compose(file -> pool.getConnection()
+            .compose(connection -> connection.begin()
+                .compose(tx -> connection.preparedQuery("SELECT id FROM " + printTable
+                        + WHERE_BY_ID + " FOR UPDATE")
+                    .execute(Tuple.of(id))
+                    .compose(rowSet -> {
+                      if (rowSet.size() == 0) {
+                        return Future.failedFuture(new NotFoundException());
+                      }
+                      file.setReadBufferSize(LargeObjectWriter.CHUNK_SIZE);
+                      return LargeObjectWriter.write(connection, file);
+                    })
+                    .compose(oid -> connection.preparedQuery("UPDATE " + printTable
+                            + " SET content = lo_get($2::bigint::oid)," + REPLACED_ASSIGNMENTS
+                            + WHERE_BY_ID)
+                        .execute(Tuple.of(id, oid))
+                        .compose(x -> connection.preparedQuery(
+                                "SELECT lo_unlink($1::bigint::oid)")
+                            .execute(Tuple.of(oid))))
+                    .compose(x -> tx.commit())
+                    .onFailure(e -> tx.rollback()))
+                .eventually(x -> connection.close()))
+            .eventually(x -> file.close()));
+  }
+
+  /**
+   * Delete print entries by ID list in transaction of connection.
+   * @param connection connection with open transaction
+   * @param uuids entry identifiers
+   * @return async result
+   */
+  public Future<Void> deleteEntries(SqlConnection connection, List<UUID> uuids) {
+    Future<Void> future = Future.succeededFuture();
+    for (int i = 0; i < uuids.size(); i += DELETE_CHUNK_SIZE) {
+      List<UUID> chunk = uuids.subList(i, Math.min(uuids.size(), i + DELETE_CHUNK_SIZE));
+      future = future.compose(x -> connection.preparedQuery(
+              "DELETE FROM " + printTable + WHERE_BY_IDS)
+          .execute(idsTuple(chunk))
+          .mapEmpty());
+    }
+    return future;
+  }
+
+  /**
+   * SQL for a list request.
+   * @param query everything after FROM, including ORDER BY, LIMIT and OFFSET
+   * @param from table and CQL condition, for counting
+   * @param tuple parameters of query
+   * @param cursor sort keys of query
+   * @param limit maximum number of rows
+   */
+  record SqlQuery(String query, String from, Tuple tuple, PageCursor cursor, int limit) {
+  }
+
+  private SqlQuery createSqlQuery(String cqlQuery, int offset, int limit, String after) {
+    CqlTranslation translation = translateCql(cqlQuery);
+    String where = translation.where();
+    PageCursor cursor = PageCursor.of(translation.orderBy());
+    String from = printTable + " WHERE " + (where == null ? "1 = 1" : where);
+    Tuple tuple = Tuple.tuple();
+    String sqlQuery;
+    if (after == null) {
+      sqlQuery = from + " ORDER BY " + cursor.orderBy() + " LIMIT " + limit + " OFFSET " + offset;
+    } else {
+      sqlQuery = printTable + " WHERE " + (where == null ? "" : "(" + where + ") AND ")
+          + cursor.condition(after, tuple)
+          + " ORDER BY " + cursor.orderBy() + " LIMIT " + limit;
+    }
+    log.debug("createSqlQuery: SQL: {}", sqlQuery);
+    return new SqlQuery(sqlQuery, from, tuple, cursor, limit);
+  }
+
+  private CqlTranslation translateCql(String cqlQuery) {
+    CqlTranslation translation = cqlCache.get(cqlQuery);
+    if (translation == null) {
+      PgCqlQuery pgCqlQuery = CQL_DEFINITION.parse(cqlQuery);
+      translation = new CqlTranslation(pgCqlQuery.getWhereClause(),
+          pgCqlQuery.getOrderByClause());
+      cqlCache.put(cqlQuery, translation);
+    }
+    return translation;
+  }
+
+  private static PgCqlDefinition createCqlDefinition() {
     PgCqlDefinition definition = PgCqlDefinition.create();
     definition.addField("id", new PgCqlFieldUuid());
     definition.addField("type", new PgCqlFieldText().withExact());
     definition.addField("created", new PgCqlFieldTimestamp());
-    definition.addField("sortingField", new PgCqlFieldText().withColumn("sorting_field"));
-
-    PgCqlQuery pgCqlQuery = definition.parse(cqlQuery);
-    String sqlOrderBy = pgCqlQuery.getOrderByClause();
-    String from = printTable + " WHERE "
-        + (pgCqlQuery.getWhereClause() == null ? "1 = 1" : pgCqlQuery.getWhereClause());
-    String sqlQuery = from
-        + (sqlOrderBy == null ? "" : " ORDER BY " + sqlOrderBy)
-        + " LIMIT " + limit + " OFFSET " + offset;
-
-    log.debug("createSqlQuery: SQL: {}", sqlQuery);
-    return Pair.of(sqlQuery, from);
+    definition.addField("sortingField",
+        new PgCqlFieldText().withColumn(CQL_COLUMNS.get("sortingField")));
+    definition.addField("status", new PgCqlFieldText().withExact());
+    return definition;
   }
 }
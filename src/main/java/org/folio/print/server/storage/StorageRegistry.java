@@ -0,0 +1,26 @@
+package org.folio.print.server.storage;
+
+import io.vertx.core.Vertx;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One {@link PrintStorage} per tenant, kept for the life time of the module.
+ *
+ * <p>Reusing the storage keeps the pool lookup and the CQL translation cache of a
+ * tenant across requests.
+ */
+public class StorageRegistry {
+
+  private final Map<String, PrintStorage> storages = new ConcurrentHashMap<>();
+
+  /**
+   * Get storage of tenant.
+   * @param vertx Vert.x handle
+   * @param tenant tenant
+   * @return storage
+   */
+  public PrintStorage get(Vertx vertx, String tenant) {
+    return storages.computeIfAbsent(tenant, t -> new PrintStorage(vertx, t));
+  }
+}
@@ -8,6 +8,9 @@ import io.vertx.ext.unit.junit.VertxUnitRunner;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -16,6 +19,7 @@ import java.util.Optional;
 import java.util.UUID;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.print.server.TestBase;
+import org.folio.print.server.data.HexContent;
 import org.folio.print.server.data.Message;
 import org.folio.print.server.data.PrintEntry;
 import org.folio.print.server.data.PrintEntryType;
@@ -29,6 +33,9 @@ import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(VertxUnitRunner.class)
 public class MainVerticleTest extends TestBase {
@@ -45,10 +52,23 @@ public class MainVerticleTest extends TestBase {
         .contentType(ContentType.TEXT);
   }
 
+  @Test
+  public void testRenderStats() {
+    // through Okapi, which routes by the module descriptor
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .get("/admin/render-stats")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("threads", greaterThan(0))
+        .body("cache", notNullValue());
+  }
+
   @Test
   public void testCrudGlobalOk() {
     PrintEntry entry = new PrintEntry();
-    entry.setContent("AA");
+    entry.setContent(HexContent.decode("AA"));
     entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
     entry.setId(UUID.randomUUID());
     entry.setType(PrintEntryType.SINGLE);
@@ -73,11 +93,11 @@ public class MainVerticleTest extends TestBase {
         .statusCode(200)
         .contentType(ContentType.JSON)
         .body("id", is(entry.getId().toString()))
-        .body("content", is(entry.getContent()))
+        .body("content", is("AA"))
         .body("type", is(entry.getType().toString()))
         .body("sortingField", is(entry.getSortingField()));
 
-    entry.setContent("BB");
+    entry.setContent(HexContent.decode("BB"));
     en = JsonObject.mapFrom(entry);
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
@@ -100,7 +120,7 @@ public class MainVerticleTest extends TestBase {
   @Test
   public void testPostMissingTenant() {
     PrintEntry entry = new PrintEntry();
-    entry.setContent("AA");
+    entry.setContent(HexContent.decode("AA"));
     entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
     entry.setId(UUID.randomUUID());
     entry.setType(PrintEntryType.SINGLE);
@@ -123,7 +143,7 @@ public class MainVerticleTest extends TestBase {
   @Test
   public void testMissingPermissionsHeader() {
     PrintEntry entry = new PrintEntry();
-    entry.setContent("AA");
+    entry.setContent(HexContent.decode("AA"));
     entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
     entry.setId(UUID.randomUUID());
     entry.setType(PrintEntryType.SINGLE);
@@ -153,7 +173,7 @@ public class MainVerticleTest extends TestBase {
   @Test
   public void testUpdateWithWrongId() {
     PrintEntry entry = new PrintEntry();
-    entry.setContent("AA");
+    entry.setContent(HexContent.decode("AA"));
     entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
     entry.setId(UUID.randomUUID());
     entry.setType(PrintEntryType.SINGLE);
@@ -171,7 +191,7 @@ public class MainVerticleTest extends TestBase {
         .statusCode(204);
 
 
-    entry.setContent("BB");
+    entry.setContent(HexContent.decode("BB"));
     en = JsonObject.mapFrom(entry);
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
@@ -204,10 +224,28 @@ public class MainVerticleTest extends TestBase {
         .body(containsString("provided object should contain property created"));
   }
 
+  @Test
+  public void testPostInvalidContent() {
+    JsonObject en = new JsonObject()
+        .put("id", UUID.randomUUID().toString())
+        .put("created", ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC).toString())
+        .put("type", PrintEntryType.SINGLE.name())
+        .put("content", "not hex");
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(en.encode())
+        .post("/print/entries")
+        .then()
+        .statusCode(400);
+  }
+
   @Test
   public void testPostBodyTooBig() {
     PrintEntry entry = new PrintEntry();
-    entry.setContent("A".repeat(PrintService.BODY_LIMIT));
+    entry.setContent(new byte[PrintService.BODY_LIMIT / 2]);
     entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
     entry.setId(UUID.randomUUID());
     entry.setType(PrintEntryType.SINGLE);
@@ -229,7 +267,7 @@ public class MainVerticleTest extends TestBase {
   @Test
   public void testNotFound() {
     PrintEntry entry = new PrintEntry();
-    entry.setContent("AA");
+    entry.setContent(HexContent.decode("AA"));
     entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
     entry.setId(UUID.randomUUID());
     entry.setType(PrintEntryType.SINGLE);
@@ -267,7 +305,7 @@ public class MainVerticleTest extends TestBase {
     entry.setType(PrintEntryType.SINGLE);
     for (int i = 0; i < 3; i++) {
       entry.setId(UUID.randomUUID());
-      entry.setContent("A" + i);
+      entry.setContent(HexContent.decode("A" + i));
       entry.setSortingField("A" + (5 - i));
       entry.setType(i % 2 == 0 ? PrintEntryType.SINGLE : PrintEntryType.BATCH);
       JsonObject en = JsonObject.mapFrom(entry);
@@ -285,6 +323,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .get("/print/entries")
         .then()
         .statusCode(200)
@@ -295,6 +334,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("limit", 0)
         .get("/print/entries")
         .then()
@@ -306,6 +346,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("query", "type=\"SINGLE\"")
         .get("/print/entries")
         .then()
@@ -317,6 +358,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("query", "type=\"BATCH\"")
         .get("/print/entries")
         .then()
@@ -328,6 +370,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("query", "type=\"SINGLE\" and created > " + ZonedDateTime.now()
             .withZoneSameInstant(ZoneOffset.UTC).toLocalDateTime().minusHours(2))
         .get("/print/entries")
@@ -340,6 +383,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("query", "type=\"SINGLE\" sortby sortingField created")
         .get("/print/entries")
         .then()
@@ -349,6 +393,101 @@ public class MainVerticleTest extends TestBase {
         .body("items[0].sortingField", is("A3"))
         .body("items[1].sortingField", is("A5"))
         .body("resultInfo.totalRecords", is(greaterThanOrEqualTo(2)));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get("/print/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(greaterThanOrEqualTo(3)))
+        .body("resultInfo.totalRecords", nullValue());
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "estimate")
+        .get("/print/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("resultInfo.totalRecords", is(greaterThanOrEqualTo(0)));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "all")
+        .get("/print/entries")
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void testGetPrintEntriesAfter() {
+    PrintEntry entry = new PrintEntry();
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.BATCH);
+    entry.setContent(HexContent.decode("AA"));
+    for (int i = 0; i < 3; i++) {
+      entry.setId(UUID.randomUUID());
+      entry.setSortingField("K" + i);
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_2)
+          .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+          .contentType(ContentType.JSON)
+          .body(JsonObject.mapFrom(entry).encode())
+          .post("/print/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    String query = "type=\"BATCH\" sortby sortingField";
+    String after = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_2)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("query", query)
+        .queryParam("limit", 2)
+        .get("/print/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(2))
+        .body("items[0].sortingField", is("K0"))
+        .body("items[1].sortingField", is("K1"))
+        .body("resultInfo.after", notNullValue())
+        .extract().path("resultInfo.after");
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_2)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("query", query)
+        .queryParam("limit", 2)
+        .queryParam("after", after)
+        .get("/print/entries")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(1))
+        .body("items[0].sortingField", is("K2"))
+        .body("resultInfo.after", nullValue());
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_2)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("query", "type=\"BATCH\" sortby created")
+        .queryParam("after", after)
+        .get("/print/entries")
+        .then()
+        .statusCode(400);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_2)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("after", "x")
+        .get("/print/entries")
+        .then()
+        .statusCode(400);
   }
 
   @Test
@@ -359,7 +498,7 @@ public class MainVerticleTest extends TestBase {
     entry.setType(PrintEntryType.SINGLE);
     for (int i = 0; i < 3; i++) {
       entry.setId(UUID.randomUUID());
-      entry.setContent("A" + i);
+      entry.setContent(HexContent.decode("A" + i));
       entry.setSortingField("A" + (5 - i));
       entry.setType(i % 2 == 0 ? PrintEntryType.SINGLE : PrintEntryType.BATCH);
       JsonObject en = JsonObject.mapFrom(entry);
@@ -377,6 +516,7 @@ public class MainVerticleTest extends TestBase {
     int count = RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("limit", "100")
         .get("/print/entries")
         .then()
@@ -398,6 +538,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("limit", "100")
         .get("/print/entries")
         .then()
@@ -416,6 +557,7 @@ public class MainVerticleTest extends TestBase {
     RestAssured.given()
         .header(XOkapiHeaders.TENANT, TENANT_1)
         .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("count", "exact")
         .queryParam("limit", "100")
         .get("/print/entries")
         .then()
@@ -424,6 +566,250 @@ public class MainVerticleTest extends TestBase {
         .body("resultInfo.totalRecords", is(greaterThanOrEqualTo(count - ids.size())));
   }
 
+  @Test
+  public void testDeletePrintEntriesByQuery() {
+    List<String> ids = new ArrayList<>();
+    PrintEntry entry = new PrintEntry();
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setContent(HexContent.decode("AA"));
+    for (int i = 0; i < 2; i++) {
+      entry.setId(UUID.randomUUID());
+      ids.add(entry.getId().toString());
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+          .contentType(ContentType.JSON)
+          .body(JsonObject.mapFrom(entry).encode())
+          .post("/print/entries")
+          .then()
+          .statusCode(204);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .queryParam("query", "id=" + ids.get(0) + " or id=" + ids.get(1))
+        .delete("/print/entries")
+        .then()
+        .statusCode(204);
+
+    for (String id : ids) {
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_1)
+          .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+          .get("/print/entries/" + id)
+          .then()
+          .statusCode(404);
+    }
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .delete("/print/entries")
+        .then()
+        .statusCode(400);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .queryParam("query", "id=" + ids.get(0))
+        .queryParam("ids", ids.get(0))
+        .delete("/print/entries")
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void testGetPrintEntryContent() {
+    PrintEntry entry = new PrintEntry();
+    entry.setId(UUID.randomUUID());
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setContent(HexContent.decode("0102030405"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(JsonObject.mapFrom(entry).encode())
+        .post("/print/entries")
+        .then()
+        .statusCode(204);
+
+    String path = "/print/entries/" + entry.getId() + "/content";
+    String etag = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get(path)
+        .then()
+        .statusCode(200)
+        .contentType("application/pdf")
+        .header("Content-Length", "5")
+        .header("Accept-Ranges", "bytes")
+        .extract().header("ETag");
+    assertArrayEquals(entry.getContent(), RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get(path)
+        .asByteArray());
+
+    byte[] part = RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .header("Range", "bytes=1-2")
+        .get(path)
+        .then()
+        .statusCode(206)
+        .header("Content-Range", "bytes 1-2/5")
+        .header("Content-Length", "2")
+        .extract().asByteArray();
+    assertArrayEquals(new byte[] {2, 3}, part);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .header("If-None-Match", etag)
+        .get(path)
+        .then()
+        .statusCode(304);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .header("Range", "bytes=5-")
+        .get(path)
+        .then()
+        .statusCode(416)
+        .header("Content-Range", "bytes */5");
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get("/print/entries/" + UUID.randomUUID() + "/content")
+        .then()
+        .statusCode(404);
+  }
+
+  @Test
+  public void testPutPrintEntryContent() {
+    PrintEntry entry = new PrintEntry();
+    entry.setId(UUID.randomUUID());
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setContent(new byte[0]);
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(JsonObject.mapFrom(entry).encode())
+        .post("/print/entries")
+        .then()
+        .statusCode(204);
+
+    byte[] pdf = new byte[3 * 1024 * 1024 + 7];
+    for (int i = 0; i < pdf.length; i++) {
+      pdf[i] = (byte) i;
+    }
+    String path = "/print/entries/" + entry.getId() + "/content";
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType("application/pdf")
+        .body(pdf)
+        .put(path)
+        .then()
+        .statusCode(204);
+
+    assertArrayEquals(pdf, RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get(path)
+        .then()
+        .statusCode(200)
+        .extract().asByteArray());
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType("application/pdf")
+        .body(pdf)
+        .put("/print/entries/" + UUID.randomUUID() + "/content")
+        .then()
+        .statusCode(404);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType("application/pdf")
+        .body(pdf)
+        .put(path)
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void testPatchPrintEntry() {
+    PrintEntry entry = new PrintEntry();
+    entry.setId(UUID.randomUUID());
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setSortingField("before");
+    entry.setContent(HexContent.decode("0A0B"));
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(JsonObject.mapFrom(entry).encode())
+        .post("/print/entries")
+        .then()
+        .statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("sortingField", "after").put("type", "BATCH").encode())
+        .patch("/print/entries/" + entry.getId())
+        .then()
+        .statusCode(204);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get("/print/entries/" + entry.getId())
+        .then()
+        .statusCode(200)
+        .body("sortingField", is("after"))
+        .body("type", is("BATCH"))
+        .body("content", is("0A0B"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("content", "00").encode())
+        .patch("/print/entries/" + entry.getId())
+        .then()
+        .statusCode(400);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("type", "OTHER").encode())
+        .patch("/print/entries/" + entry.getId())
+        .then()
+        .statusCode(400);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonObject().put("sortingField", "x").encode())
+        .patch("/print/entries/" + UUID.randomUUID())
+        .then()
+        .statusCode(404);
+  }
+
   @Test
   public void testSaveMailMessage() throws IOException {
     String message = getResourceAsString("mail/mail.json");
@@ -451,6 +837,161 @@ public class MainVerticleTest extends TestBase {
         .body("content", notNullValue());
   }
 
+  @Test
+  public void testPostPrintEntriesBatch() {
+    PrintEntry entry = new PrintEntry();
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setContent(HexContent.decode("AA"));
+    entry.setId(UUID.randomUUID());
+    JsonObject first = JsonObject.mapFrom(entry);
+    entry.setId(UUID.randomUUID());
+    JsonObject second = JsonObject.mapFrom(entry);
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonArray().add(first).add(second).add(first).encode())
+        .post("/print/entries/batch")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(3))
+        .body("items[0].id", is(first.getString("id")))
+        .body("items[0].status", is("created"))
+        .body("items[1].status", is("created"))
+        .body("items[2].status", is("exists"));
+
+    entry.setId(UUID.randomUUID());
+    String ndjson = JsonObject.mapFrom(entry).encode() + "\n"
+        + "{\"id\": \"" + UUID.randomUUID() + "\"}\n"
+        + "not json\n"
+        + second.encode() + "\n";
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType("application/x-ndjson")
+        .body(ndjson)
+        .post("/print/entries/batch")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(4))
+        .body("items[0].status", is("created"))
+        .body("items[1].status", is("failed"))
+        .body("items[2].status", is("failed"))
+        .body("items[3].status", is("exists"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .get("/print/entries/" + entry.getId())
+        .then()
+        .statusCode(200)
+        .body("content", is("AA"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType("application/x-ndjson")
+        .body(ndjson)
+        .post("/print/entries/batch")
+        .then()
+        .statusCode(400);
+  }
+
+  @Test
+  public void testSaveMailBatch() throws IOException {
+    JsonObject message = new JsonObject(getResourceAsString("mail/mail.json"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType(ContentType.JSON)
+        .body(new JsonArray().add(message).add(message).encode())
+        .post("/mail/batch")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(2))
+        .body("items[0].status", is("created"))
+        .body("items[1].status", is("created"));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_1)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .contentType("application/x-ndjson")
+        .body(message.encode() + "\n{\"to\": \"x\"}\n")
+        .post("/mail/batch")
+        .then()
+        .statusCode(200)
+        .contentType(ContentType.JSON)
+        .body("items", hasSize(2))
+        .body("items[0].status", is("created"))
+        .body("items[1].status", is("failed"));
+  }
+
+  @Test
+  public void testGetPrintEntriesAborted() throws IOException {
+    // about 10 MB of list response; more than the socket buffers take
+    String sortingField = "aborted " + "x".repeat(1000);
+    String query = "sortingField==\"" + sortingField + "\"";
+    PrintEntry entry = new PrintEntry();
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setSortingField(sortingField);
+    entry.setContent(HexContent.decode("AA"));
+    for (int i = 0; i < 5; i++) {
+      JsonArray items = new JsonArray();
+      for (int j = 0; j < 2000; j++) {
+        entry.setId(UUID.randomUUID());
+        items.add(JsonObject.mapFrom(entry));
+      }
+      RestAssured.given()
+          .header(XOkapiHeaders.TENANT, TENANT_2)
+          .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+          .contentType(ContentType.JSON)
+          .body(items.encode())
+          .post("/print/entries/batch")
+          .then()
+          .statusCode(200);
+    }
+
+    // abort more list responses than there are connections in the pool
+    String request = "GET /print/entries?limit=100000&query="
+        + URLEncoder.encode(query, StandardCharsets.UTF_8) + " HTTP/1.1\r\n"
+        + "Host: localhost\r\n"
+        + XOkapiHeaders.TENANT + ": " + TENANT_2 + "\r\n"
+        + XOkapiHeaders.PERMISSIONS + ": " + permRead.encode() + "\r\n\r\n";
+    for (int i = 0; i < 20; i++) {
+      try (Socket socket = new Socket("localhost", MODULE_PORT)) {
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.UTF_8));
+        assertTrue(socket.getInputStream().read(new byte[4096]) > 0);
+      }
+    }
+
+    // the connections are back in the pool
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_2)
+        .header(XOkapiHeaders.PERMISSIONS, permRead.encode())
+        .queryParam("query", query)
+        .queryParam("limit", 1)
+        .queryParam("count", "exact")
+        .get("/print/entries")
+        .then()
+        .statusCode(200)
+        .body("items", hasSize(1))
+        .body("resultInfo.totalRecords", is(10000));
+
+    RestAssured.given()
+        .header(XOkapiHeaders.TENANT, TENANT_2)
+        .header(XOkapiHeaders.PERMISSIONS, permWrite.encode())
+        .queryParam("query", query)
+        .delete("/print/entries")
+        .then()
+        .statusCode(204);
+  }
+
   private String getResourceAsString(String name) throws IOException {
     try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(name)) {
       if (inputStream == null) {
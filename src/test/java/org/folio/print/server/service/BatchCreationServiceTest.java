@@ -2,6 +2,7 @@ package org.folio.print.server.service;
 
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
+import io.restassured.response.Response;
 import io.vertx.core.json.JsonArray;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import org.folio.okapi.common.XOkapiHeaders;
@@ -12,6 +13,8 @@ import org.junit.runner.RunWith;
 import java.io.IOException;
 import java.io.InputStream;
 
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
 @RunWith(VertxUnitRunner.class)
@@ -52,7 +55,94 @@ public class BatchCreationServiceTest extends TestBase {
             .contentType(ContentType.JSON)
             .post("/print/batch-creation")
             .then()
-            .statusCode(204);
+            .statusCode(200)
+            .body("batches", is(1))
+            .body("skipped", hasSize(0));
+
+    RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .header(XOkapiHeaders.PERMISSIONS, perm.encode())
+            .queryParam("query", "type=\"SINGLE\"")
+            .get("/print/entries")
+            .then()
+            .statusCode(200)
+            .body("items", hasSize(0));
+
+    RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .header(XOkapiHeaders.PERMISSIONS, perm.encode())
+            .queryParam("query", "type=\"BATCH\"")
+            .get("/print/entries")
+            .then()
+            .statusCode(200)
+            .body("items", hasSize(1));
+
+    // nothing left to merge
+    RestAssured.given()
+            .baseUri(MODULE_URL)
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .header(XOkapiHeaders.PERMISSIONS, perm.encode())
+            .contentType(ContentType.JSON)
+            .post("/print/batch-creation")
+            .then()
+            .statusCode(200)
+            .body("batches", is(0))
+            .body("skipped", hasSize(0));
+
+    String batchId = RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .header(XOkapiHeaders.PERMISSIONS, perm.encode())
+            .queryParam("query", "type=\"BATCH\"")
+            .get("/print/entries")
+            .then()
+            .statusCode(200)
+            .body("items", hasSize(1))
+            .extract().path("items[0].id");
+
+    RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .header(XOkapiHeaders.PERMISSIONS, perm.encode())
+            .get("/print/entries/" + batchId + "/page-index")
+            .then()
+            .statusCode(200)
+            .body("pageCount", is(2))
+            .body("entries", hasSize(2))
+            .body("entries[0].sortingField", is("user@mail.com"))
+            .body("entries[0].firstPage", is(1))
+            .body("entries[1].firstPage", is(2));
+
+    pagesRequest(batchId, perm, "first", 2)
+            .then()
+            .statusCode(200)
+            .contentType("application/pdf");
+
+    pagesRequest(batchId, perm, "sortingField", "user@mail.com")
+            .then()
+            .statusCode(200)
+            .contentType("application/pdf");
+
+    pagesRequest(batchId, perm, "sortingField", "other@mail.com")
+            .then()
+            .statusCode(404);
+
+    pagesRequest(batchId, perm, "first", 3)
+            .then()
+            .statusCode(400);
+
+    RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .header(XOkapiHeaders.PERMISSIONS, perm.encode())
+            .get("/print/entries/" + batchId + "/pages")
+            .then()
+            .statusCode(400);
+  }
+
+  private static Response pagesRequest(String id, JsonArray perm, String name, Object value) {
+    return RestAssured.given()
+            .header(XOkapiHeaders.TENANT, TENANT_1)
+            .header(XOkapiHeaders.PERMISSIONS, perm.encode())
+            .queryParam(name, value)
+            .get("/print/entries/" + id + "/pages");
   }
 
   private String getResourceAsString(String name) throws IOException {
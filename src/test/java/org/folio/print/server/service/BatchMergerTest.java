@@ -0,0 +1,167 @@
+package org.folio.print.server.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.folio.print.server.data.PageIndex;
+import org.folio.print.server.data.PageRange;
+import org.junit.Test;
+
+public class BatchMergerTest {
+
+  @Test
+  public void merge() throws IOException {
+    byte[] pdf = PdfService.createPdfFile("<div><p>PDF file</p></div>");
+    UUID id1 = UUID.randomUUID();
+    UUID id2 = UUID.randomUUID();
+    UUID empty = UUID.randomUUID();
+    UUID invalid = UUID.randomUUID();
+    Path directory;
+    try (BatchMerger merger = new BatchMerger(0)) {
+      assertTrue(merger.add(id1, "a", pdf));
+      assertTrue(merger.add(id2, "b", pdf));
+      assertTrue(merger.add(empty, "c", new byte[0]));
+      assertFalse(merger.add(invalid, "d", new byte[] {1, 2, 3}));
+      assertEquals(List.of(id1, id2, empty), merger.takeConsumed());
+      assertEquals(List.of(invalid), merger.takeInvalid());
+      assertEquals(3, merger.getEntryCount());
+      assertEquals(2, merger.getPageCount());
+      assertTrue(merger.hasDocuments());
+      Path merged = merger.merge();
+      directory = merged.getParent();
+      try (PDDocument document = PDDocument.load(merged.toFile())) {
+        assertEquals(2, document.getNumberOfPages());
+      }
+      PageIndex pageIndex = merger.getPageIndex();
+      assertEquals(2, pageIndex.getPageCount());
+      assertEquals(List.of(new PageRange(id1, "a", 1, 1), new PageRange(id2, "b", 2, 1)),
+          pageIndex.getEntries());
+    }
+    assertFalse(Files.exists(directory));
+  }
+
+  @Test
+  public void mergeHtml() throws IOException {
+    byte[] pdf = PdfService.createPdfFile("<p>single</p>");
+    UUID id = UUID.randomUUID();
+    try (BatchMerger merger = new BatchMerger(0)) {
+      assertTrue(merger.addHtml(UUID.randomUUID(), "a", "<p>first</p>", pdf));
+      assertTrue(merger.addHtml(id, "b", "<p>second", pdf));
+      assertTrue(merger.add(UUID.randomUUID(), "c", pdf));
+      assertTrue(merger.addHtml(UUID.randomUUID(), "d", null, pdf));
+      assertTrue(merger.addHtml(UUID.randomUUID(), "e", "<p>third</p>", pdf));
+      assertEquals(5, merger.getEntryCount());
+      assertEquals(4, merger.getPageCount());
+      Path merged = merger.merge();
+      assertEquals(5, merger.getPageCount());
+      try (PDDocument document = PDDocument.load(merged.toFile())) {
+        assertEquals(5, document.getNumberOfPages());
+      }
+      List<PageRange> ranges = merger.getPageIndex().getEntries();
+      assertEquals(List.of("a", "b", "c", "d", "e"),
+          ranges.stream().map(PageRange::getSortingField).toList());
+      assertEquals(new PageRange(id, "b", 2, 1), ranges.get(1));
+      assertEquals(5, ranges.get(4).getFirstPage());
+    }
+  }
+
+  @Test
+  public void mergeHtmlInvalidFallback() throws IOException {
+    // the id is taken from the bookmark of the second entry, so the run cannot be indexed
+    // and the documents rendered one by one are merged instead
+    String clash = "<p id=\"batch-print-entry-1\">clash</p>";
+    byte[] pdf = PdfService.createPdfFile(clash);
+    UUID first = UUID.randomUUID();
+    UUID invalid = UUID.randomUUID();
+    UUID third = UUID.randomUUID();
+    try (BatchMerger merger = new BatchMerger(0)) {
+      assertTrue(merger.addHtml(first, "a", clash, pdf));
+      assertTrue(merger.addHtml(invalid, "b", "<p>invalid</p>", new byte[] {1, 2, 3}));
+      assertTrue(merger.addHtml(third, "c", clash, pdf));
+      assertEquals(List.of(), merger.takeConsumed());
+      merger.merge();
+      assertEquals(List.of(first, third), merger.takeConsumed());
+      assertEquals(List.of(invalid), merger.takeInvalid());
+      assertEquals(2, merger.getEntryCount());
+      assertEquals(2, merger.getPageCount());
+      assertEquals(List.of(), merger.takeConsumed());
+    }
+  }
+
+  @Test
+  public void countRunPages() throws IOException {
+    byte[] longPdf = PdfService.createPdfFile("<p>long notice</p>".repeat(150));
+    int longPages;
+    try (PDDocument document = PDDocument.load(longPdf)) {
+      longPages = document.getNumberOfPages();
+    }
+    try (BatchMerger merger = new BatchMerger(0, true)) {
+      assertTrue(merger.addHtml(UUID.randomUUID(), "a", "<p>long notice</p>".repeat(150),
+          longPdf));
+      assertEquals(longPages, merger.getPageCount());
+      assertTrue(new BatchOptions(100, 0, longPages, 0, true, null)
+          .isFull(merger.getEntryCount(), merger.getPageCount()));
+      merger.merge();
+      assertEquals(longPages, merger.getPageCount());
+    }
+    try (BatchMerger merger = new BatchMerger(0)) {
+      assertTrue(merger.addHtml(UUID.randomUUID(), "a", "<p>long notice</p>".repeat(150),
+          longPdf));
+      assertEquals(0, merger.getPageCount());
+    }
+  }
+
+  @Test
+  public void mergeHtmlPageIndex() throws IOException {
+    String longNotice = "<p>long notice</p>".repeat(150);
+    byte[] longPdf = PdfService.createPdfFile(longNotice);
+    int longPages;
+    try (PDDocument document = PDDocument.load(longPdf)) {
+      longPages = document.getNumberOfPages();
+    }
+    assertTrue(longPages > 1);
+    UUID first = UUID.randomUUID();
+    UUID second = UUID.randomUUID();
+    UUID third = UUID.randomUUID();
+    try (BatchMerger merger = new BatchMerger(0)) {
+      merger.addHtml(first, "a", "<p>first</p>", PdfService.createPdfFile("<p>first</p>"));
+      merger.addHtml(second, "b", longNotice, longPdf);
+      merger.addHtml(third, "c", "<p>third</p>", PdfService.createPdfFile("<p>third</p>"));
+      Path merged = merger.merge();
+      assertEquals(List.of(new PageRange(first, "a", 1, 1),
+              new PageRange(second, "b", 2, longPages),
+              new PageRange(third, "c", 2 + longPages, 1)),
+          merger.getPageIndex().getEntries());
+      try (PDDocument document = PDDocument.load(merged.toFile())) {
+        assertEquals(2 + longPages, document.getNumberOfPages());
+        assertNull(document.getDocumentCatalog().getDocumentOutline());
+      }
+    }
+  }
+
+  @Test
+  public void onlyEmptyEntries() throws IOException {
+    try (BatchMerger merger = new BatchMerger(1024 * 1024)) {
+      assertTrue(merger.isEmpty());
+      merger.add(UUID.randomUUID(), null, null);
+      assertFalse(merger.isEmpty());
+      assertFalse(merger.hasDocuments());
+    }
+  }
+
+  @Test
+  public void batchOptionsFull() {
+    assertFalse(new BatchOptions(100, 0, 0, 0, false, null).isFull(1000, 1000));
+    assertTrue(new BatchOptions(100, 10, 0, 0, false, null).isFull(10, 1));
+    assertFalse(new BatchOptions(100, 10, 0, 0, false, null).isFull(9, 100));
+    assertTrue(new BatchOptions(100, 0, 50, 0, false, null).isFull(1, 50));
+  }
+}
@@ -0,0 +1,36 @@
+package org.folio.print.server.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+  @Test
+  public void parse() {
+    assertEquals(new ByteRange(0, 9), ByteRange.parse("bytes=0-9", 100));
+    assertEquals(new ByteRange(10, 99), ByteRange.parse("bytes=10-", 100));
+    assertEquals(new ByteRange(90, 99), ByteRange.parse("bytes=90-200", 100));
+    assertEquals(new ByteRange(95, 99), ByteRange.parse("bytes=-5", 100));
+    assertEquals(new ByteRange(0, 99), ByteRange.parse("bytes=-500", 100));
+    assertEquals(10, ByteRange.parse("bytes=0-9", 100).length());
+  }
+
+  @Test
+  public void unsatisfiable() {
+    assertEquals(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=100-", 100));
+    assertEquals(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 100));
+    assertEquals(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-1", 0));
+  }
+
+  @Test
+  public void ignored() {
+    assertNull(ByteRange.parse(null, 100));
+    assertNull(ByteRange.parse("items=0-1", 100));
+    assertNull(ByteRange.parse("bytes=0-1,5-6", 100));
+    assertNull(ByteRange.parse("bytes=5-1", 100));
+    assertNull(ByteRange.parse("bytes=a-b", 100));
+    assertNull(ByteRange.parse("bytes=5", 100));
+  }
+}
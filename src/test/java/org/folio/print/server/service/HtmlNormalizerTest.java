@@ -0,0 +1,82 @@
+package org.folio.print.server.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HtmlNormalizerTest {
+
+  private static String normalize(String html) {
+    return HtmlNormalizer.normalize(html);
+  }
+
+  @Test
+  public void wellFormed() {
+    assertEquals("<div><p class=\"a\">text</p></div>", normalize("<p class=\"a\">text</p>"));
+  }
+
+  @Test
+  public void namedReferences() {
+    assertEquals("<div>&#160;&#60;&#62;&#38;&#34;&#39;&#8211;&#8212;&#169;&#8482;&#8364;</div>",
+        normalize("&nbsp;&lt;&gt;&amp;&quot;&apos;&ndash;&mdash;&copy;&trade;&euro;"));
+    assertEquals("<div>&#8770;&#824;</div>", normalize("&NotEqualTilde;"));
+    assertEquals("<div>&#169; 2024</div>", normalize("&copy 2024"));
+  }
+
+  @Test
+  public void unknownReferences() {
+    assertEquals("<div>AT&#38;T &#38;foo; &#38;# a &#38; b</div>",
+        normalize("AT&T &foo; &# a & b"));
+  }
+
+  @Test
+  public void numericReferences() {
+    assertEquals("<div>&#65;&#66;&#65533;&#65533;</div>",
+        normalize("&#65;&#x42;&#0;&#99999999999;"));
+  }
+
+  @Test
+  public void voidElements() {
+    assertEquals("<div>a<br/>b<br/>c<img src=\"x.png\"/><hr/><br/></div>",
+        normalize("a<br>b<BR/>c<img src=x.png><hr></br>"));
+  }
+
+  @Test
+  public void unclosedElements() {
+    assertEquals("<div><div><p>PDF file</p></div></div>", normalize("<div><p>PDF file"));
+    assertEquals("<div><ul><li>a</li><li>b</li></ul></div>", normalize("<ul><li>a<li>b</ul>"));
+    assertEquals("<div><p>a</p><p>b</p><table><tr><td>1</td><td>2</td></tr>"
+            + "<tr><td>3</td></tr></table></div>",
+        normalize("<p>a<p>b<table><tr><td>1<td>2<tr><td>3</table>"));
+  }
+
+  @Test
+  public void strayEndTags() {
+    assertEquals("<div><b>a</b>b</div>", normalize("<b>a</i></b>b</span>"));
+  }
+
+  @Test
+  public void attributes() {
+    assertEquals("<div><input type=\"checkbox\" checked=\"checked\"/>"
+            + "<a href=\"?a=1&#38;copy=2&#38;b=&#169;\" title=\"&#34;x&#34; &#60;\">l</a></div>",
+        normalize("<INPUT TYPE='checkbox' checked checked>"
+            + "<a href=\"?a=1&copy=2&b=&copy;\" title='\"x\" <'>l</a>"));
+  }
+
+  @Test
+  public void commentsAndScripts() {
+    assertEquals("<div>ab<style>p > b { color: red }</style>c</div>",
+        normalize("<!DOCTYPE html>a<!-- x -->b<script>if (a < b) {}</script>"
+            + "<style>p > b { color: red }</style>c"));
+  }
+
+  @Test
+  public void lessThanInText() {
+    assertEquals("<div>1 &#60; 2 &#60;3</div>", normalize("1 < 2 <3"));
+  }
+
+  @Test
+  public void controlCharacters() {
+    assertEquals("<div>a\tb\n</div>", normalize("a\u0001\tb\n"));
+  }
+}
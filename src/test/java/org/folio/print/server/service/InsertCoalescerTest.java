@@ -0,0 +1,58 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Future;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import org.folio.print.server.TestBase;
+import org.folio.print.server.data.PrintEntry;
+import org.folio.print.server.data.PrintEntryType;
+import org.folio.print.server.storage.EntryException;
+import org.folio.print.server.storage.PrintStorage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class InsertCoalescerTest extends TestBase {
+
+  private static PrintEntry entry(UUID id) {
+    PrintEntry entry = new PrintEntry();
+    entry.setId(id);
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setContent(new byte[] {1, 2});
+    return entry;
+  }
+
+  @Test
+  public void coalesce(TestContext context) {
+    PrintStorage storage = new PrintStorage(vertx, TENANT_1);
+    InsertCoalescer coalescer = new InsertCoalescer(50, 2);
+    PrintEntry first = entry(UUID.randomUUID());
+    PrintEntry second = entry(UUID.randomUUID());
+    PrintEntry duplicate = entry(first.getId());
+
+    vertx.getOrCreateContext().runOnContext(x -> {
+      Future<Void> f1 = coalescer.createEntry(vertx, TENANT_1, storage, first);
+      Future<Void> f2 = coalescer.createEntry(vertx, TENANT_1, storage, second);
+      f1.compose(y -> f2)
+          .compose(y -> coalescer.createEntry(vertx, TENANT_1, storage, duplicate))
+          .onComplete(context.asyncAssertFailure(e -> {
+            context.assertTrue(e instanceof EntryException);
+            context.assertEquals(PrintStorage.entryExists(first.getId()).getMessage(),
+                e.getMessage());
+            // the same failure as for an insert that is not coalesced
+            storage.createEntry(duplicate)
+                .onComplete(context.asyncAssertFailure(f -> {
+                  context.assertTrue(f instanceof EntryException);
+                  context.assertEquals(e.getMessage(), f.getMessage());
+                }));
+            storage.getEntry(second.getId())
+                .onComplete(context.asyncAssertSuccess(entry ->
+                    context.assertEquals(2, entry.getContent().length)));
+          }));
+    });
+  }
+}
@@ -0,0 +1,27 @@
+package org.folio.print.server.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+public class PdfLinearizerTest {
+
+  @Test
+  public void missingCommand() throws IOException {
+    Path dir = Files.createTempDirectory("linearizer");
+    Path pdf = Files.write(dir.resolve("merged.pdf"), PdfService.createPdfFile("<p>x</p>"));
+    PdfLinearizer linearizer = new PdfLinearizer(dir.resolve("no-such-qpdf").toString());
+    assertEquals(pdf, linearizer.linearize(pdf));
+  }
+
+  @Test
+  public void failingCommand() throws IOException {
+    Path dir = Files.createTempDirectory("linearizer");
+    Path pdf = Files.write(dir.resolve("merged.pdf"), PdfService.createPdfFile("<p>x</p>"));
+    PdfLinearizer linearizer = new PdfLinearizer("false");
+    assertEquals(pdf, linearizer.linearize(pdf));
+  }
+}
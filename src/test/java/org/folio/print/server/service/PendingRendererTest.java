@@ -0,0 +1,128 @@
+package org.folio.print.server.service;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import org.folio.print.server.TestBase;
+import org.folio.print.server.data.PrintEntry;
+import org.folio.print.server.data.PrintEntryStatus;
+import org.folio.print.server.data.PrintEntryType;
+import org.folio.print.server.storage.PrintStorage;
+import org.folio.print.server.storage.StorageRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class PendingRendererTest extends TestBase {
+
+  private static PrintEntry entry(String source) {
+    PrintEntry entry = new PrintEntry();
+    entry.setId(UUID.randomUUID());
+    entry.setCreated(ZonedDateTime.now().withZoneSameInstant(ZoneOffset.UTC));
+    entry.setType(PrintEntryType.SINGLE);
+    entry.setSource(source);
+    return entry;
+  }
+
+  @Test
+  public void renderPending(TestContext context) {
+    PrintStorage storage = new PrintStorage(vertx, TENANT_2);
+    RenderExecutor executor = new RenderExecutor(2, 10);
+    PendingRenderer renderer = new PendingRenderer(
+        new RenderCache(executor, new RenderCacheOptions(0, false, 0)),
+        new MailOptions(true, 2, 3, 1000, 60000), new StorageRegistry());
+    PrintEntry first = entry("<p>first</p>");
+    PrintEntry second = entry("<p>second");
+    PrintEntry third = entry("<p>third</p>");
+
+    storage.createPendingEntry(first)
+        .compose(x -> storage.createPendingEntry(second))
+        .compose(x -> storage.createPendingEntry(third))
+        .compose(x -> storage.getEntry(first.getId()))
+        .compose(entry -> {
+          context.assertEquals(PrintEntryStatus.PENDING, entry.getStatus());
+          context.assertEquals(0, entry.getContent().length);
+          return renderer.renderPending(vertx, TENANT_2);
+        })
+        .compose(rendered -> {
+          context.assertEquals(3, rendered);
+          return renderer.renderPending(vertx, TENANT_2);
+        })
+        .compose(rendered -> {
+          context.assertEquals(0, rendered);
+          return storage.getEntry(second.getId());
+        })
+        .onComplete(context.asyncAssertSuccess(entry -> {
+          context.assertEquals(PrintEntryStatus.RENDERED, entry.getStatus());
+          context.assertTrue(entry.getContent().length > 0);
+          executor.close();
+        }));
+  }
+
+  @Test
+  public void renderPendingWindow(TestContext context) {
+    PrintStorage storage = new PrintStorage(vertx, TENANT_2);
+    RenderExecutor executor = new RenderExecutor(2, 10);
+    PendingRenderer renderer = new PendingRenderer(
+        new RenderCache(executor, new RenderCacheOptions(0, false, 0)),
+        new MailOptions(true, 2, 3, 1000, 60000), new StorageRegistry());
+    PrintEntry leased = entry("<p>leased</p>");
+    LocalDateTime to = LocalDateTime.now(ZoneOffset.UTC).plusMinutes(1);
+
+    storage.createPendingEntry(leased)
+        // claimed by a renderer that went away; not due for 10 minutes
+        .compose(x -> storage.claimPendingEntries(100, 600000))
+        .compose(x -> renderer.renderPending(vertx, TENANT_2))
+        .compose(rendered -> {
+          context.assertEquals(0, rendered);
+          return renderer.renderPending(vertx, TENANT_2, to.minusDays(1), to);
+        })
+        .compose(rendered -> {
+          context.assertTrue(rendered >= 1);
+          return storage.getUnrenderedEntries(to.minusDays(1), to);
+        })
+        .compose(unrendered -> {
+          context.assertTrue(unrendered.stream()
+              .noneMatch(e -> e.getString("id").equals(leased.getId().toString())));
+          return storage.getEntry(leased.getId());
+        })
+        .onComplete(context.asyncAssertSuccess(entry -> {
+          context.assertEquals(PrintEntryStatus.RENDERED, entry.getStatus());
+          executor.close();
+        }));
+  }
+
+  @Test
+  public void renderFailed(TestContext context) {
+    PrintStorage storage = new PrintStorage(vertx, TENANT_2);
+    PrintEntry entry = entry("<p>retry</p>");
+
+    storage.createPendingEntry(entry)
+        .compose(x -> storage.claimPendingEntries(100, 60000))
+        .compose(claimed -> {
+          context.assertTrue(claimed.stream().anyMatch(p -> p.id().equals(entry.getId())));
+          return storage.setRenderFailed(entry.getId(), "first", 0);
+        })
+        .compose(x -> storage.claimPendingEntries(100, 60000))
+        .compose(claimed -> {
+          context.assertEquals(1, claimed.stream()
+              .filter(p -> p.id().equals(entry.getId()))
+              .findFirst().orElseThrow().attempts());
+          return storage.setRenderFailed(entry.getId(), "second", -1);
+        })
+        .compose(x -> storage.claimPendingEntries(100, 0))
+        .compose(claimed -> {
+          context.assertTrue(claimed.stream().noneMatch(p -> p.id().equals(entry.getId())));
+          return storage.setRendered(entry.getId(), new byte[] {1});
+        })
+        .compose(updated -> {
+          context.assertFalse(updated);
+          return storage.getEntry(entry.getId());
+        })
+        .onComplete(context.asyncAssertSuccess(failed ->
+            context.assertEquals(PrintEntryStatus.FAILED, failed.getStatus())));
+  }
+}
@@ -0,0 +1,88 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.folio.print.server.TestBase;
+import org.folio.print.server.storage.PrintStorage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class RenderCacheTest extends TestBase {
+
+  @Test
+  public void memory(TestContext context) {
+    PrintStorage storage = new PrintStorage(vertx, TENANT_2);
+    PrintStorage otherTenant = new PrintStorage(vertx, TENANT_1);
+    RenderExecutor executor = new RenderExecutor(1, 10);
+    RenderCache cache = new RenderCache(executor, new RenderCacheOptions(1024 * 1024, false, 0));
+
+    cache.createPdfFile(vertx, storage, "<p>notice</p>")
+        .compose(first -> cache.createPdfFile(vertx, storage, "<p>notice</p>")
+            .map(second -> {
+              context.assertTrue(first.length > 0);
+              context.assertTrue(first == second);
+              return null;
+            }))
+        .compose(x -> cache.createPdfFile(vertx, otherTenant, "<p>notice</p>"))
+        .compose(x -> cache.createPdfFile(vertx, storage, " "))
+        .onComplete(context.asyncAssertSuccess(blank -> {
+          context.assertEquals(0, blank.length);
+          JsonObject stats = cache.getStats();
+          context.assertEquals(1L, stats.getLong("hits"));
+          context.assertEquals(2L, stats.getLong("misses"));
+          context.assertEquals(2, stats.getInteger("entries"));
+          context.assertEquals(0L, stats.getLong("evictions"));
+          executor.close();
+        }));
+  }
+
+  @Test
+  public void eviction(TestContext context) {
+    PrintStorage storage = new PrintStorage(vertx, TENANT_2);
+    RenderExecutor executor = new RenderExecutor(1, 10);
+    long size = PdfService.createPdfFile("<p>a</p>").length;
+    RenderCache cache = new RenderCache(executor,
+        new RenderCacheOptions(size * 3 / 2, false, 0));
+
+    cache.createPdfFile(vertx, storage, "<p>a</p>")
+        .compose(x -> cache.createPdfFile(vertx, storage, "<p>b</p>"))
+        .compose(x -> cache.createPdfFile(vertx, storage, "<p>a</p>"))
+        .onComplete(context.asyncAssertSuccess(x -> {
+          JsonObject stats = cache.getStats();
+          context.assertEquals(0L, stats.getLong("hits"));
+          context.assertEquals(3L, stats.getLong("misses"));
+          context.assertEquals(2L, stats.getLong("evictions"));
+          context.assertEquals(1, stats.getInteger("entries"));
+          executor.close();
+        }));
+  }
+
+  @Test
+  public void persistent(TestContext context) {
+    PrintStorage storage = new PrintStorage(vertx, TENANT_2);
+    RenderExecutor executor = new RenderExecutor(1, 10);
+    RenderCacheOptions options = new RenderCacheOptions(0, true, 60000);
+    RenderCache cache = new RenderCache(executor, options);
+    // another module instance, or the same after a restart
+    RenderCache restarted = new RenderCache(executor, options);
+
+    cache.createPdfFile(vertx, storage, "<p>persistent</p>")
+        .compose(first -> restarted.createPdfFile(vertx, storage, "<p>persistent</p>")
+            .map(second -> {
+              context.assertEquals(first.length, second.length);
+              return null;
+            }))
+        .compose(x -> {
+          context.assertEquals(1L, cache.getStats().getLong("misses"));
+          context.assertEquals(0L, restarted.getStats().getLong("misses"));
+          context.assertEquals(1L, restarted.getStats().getLong("persistentHits"));
+          return new RenderCache(executor, new RenderCacheOptions(0, true, 0)).prune(storage);
+        })
+        .onComplete(context.asyncAssertSuccess(pruned -> {
+          context.assertTrue(pruned >= 1);
+          executor.close();
+        }));
+  }
+}
@@ -0,0 +1,89 @@
+package org.folio.print.server.service;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class RenderExecutorTest {
+
+  private Vertx vertx;
+
+  @Before
+  public void before() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void after(TestContext context) {
+    vertx.close().onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void submit(TestContext context) {
+    RenderExecutor executor = new RenderExecutor(1, 1);
+    executor.submit(vertx, () -> Thread.currentThread().getName())
+        .onComplete(context.asyncAssertSuccess(name -> {
+          context.assertTrue(name.startsWith("render-"));
+          context.assertEquals(1L, executor.getStats().getLong("completed"));
+          executor.close();
+        }));
+  }
+
+  @Test
+  public void submitFailure(TestContext context) {
+    RenderExecutor executor = new RenderExecutor(1, 1);
+    executor.submit(vertx, () -> {
+      throw new IllegalStateException("render failed");
+    }).onComplete(context.asyncAssertFailure(e -> {
+      context.assertEquals("render failed", e.getMessage());
+      executor.close();
+    }));
+  }
+
+  @Test
+  public void queueFull(TestContext context) {
+    RenderExecutor executor = new RenderExecutor(1, 1);
+    CountDownLatch latch = new CountDownLatch(1);
+    Future<Void> running = executor.submit(vertx, () -> {
+      latch.await();
+      return null;
+    });
+    Future<Void> queued = executor.submit(vertx, () -> null);
+    executor.submit(vertx, () -> null)
+        .onComplete(context.asyncAssertFailure(e -> {
+          context.assertTrue(e instanceof RenderQueueFullException);
+          context.assertTrue(((RenderQueueFullException) e).getRetryAfter() >= 1);
+          JsonObject stats = executor.getStats();
+          context.assertEquals(1L, stats.getLong("rejected"));
+          context.assertEquals(1, stats.getInteger("queueSize"));
+          latch.countDown();
+          running.compose(x -> queued)
+              .onComplete(context.asyncAssertSuccess(x -> executor.close()));
+        }));
+  }
+
+  @Test
+  public void threadInit(TestContext context) {
+    ThreadLocal<String> initialized = new ThreadLocal<>();
+    RenderExecutor executor = new RenderExecutor(2, 1,
+        () -> initialized.set(Thread.currentThread().getName()));
+    executor.submit(vertx, initialized::get)
+        .onComplete(context.asyncAssertSuccess(name -> {
+          context.assertTrue(name.startsWith("render-"));
+          executor.close();
+        }));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidThreads() {
+    new RenderExecutor(0, 1);
+  }
+}
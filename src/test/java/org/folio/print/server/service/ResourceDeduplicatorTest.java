@@ -0,0 +1,71 @@
+package org.folio.print.server.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.Test;
+
+public class ResourceDeduplicatorTest {
+
+  private static final String IMAGE = "<img src=\"data:image/png;base64,"
+      + "iVBORw0KGgoAAAANSUhEUgAAAAQAAAAECAIAAAAmkwkpAAAALklEQVR4nA3HMQEAMBACMeQg4kUgh/FEIbDNFk"
+      + "lYRFRIh48cvZ/iktL+DI+Mjgd5cxFhmrc1xAAAAABJRU5ErkJggg==\"/>";
+
+  private static byte[] merge(byte[]... pdfs) throws IOException {
+    PDFMergerUtility merger = new PDFMergerUtility();
+    for (byte[] pdf : pdfs) {
+      merger.addSource(new ByteArrayInputStream(pdf));
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    merger.setDestinationStream(os);
+    merger.mergeDocuments(null);
+    return os.toByteArray();
+  }
+
+  private static COSBase image(PDPage page) {
+    COSDictionary xobjects = (COSDictionary) page.getResources().getCOSObject()
+        .getDictionaryObject(COSName.XOBJECT);
+    COSName name = xobjects.keySet().iterator().next();
+    return xobjects.getDictionaryObject(name);
+  }
+
+  @Test
+  public void deduplicate() throws IOException {
+    byte[] merged = merge(PdfService.createPdfFile("<p>first</p>" + IMAGE),
+        PdfService.createPdfFile("<p>second</p>" + IMAGE));
+    byte[] deduplicated;
+    try (PDDocument document = PDDocument.load(merged)) {
+      assertNotSame(image(document.getPage(0)), image(document.getPage(1)));
+      assertTrue(ResourceDeduplicator.deduplicate(document) > 0);
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      document.save(os);
+      deduplicated = os.toByteArray();
+    }
+    assertTrue(deduplicated.length < merged.length);
+    try (PDDocument document = PDDocument.load(deduplicated)) {
+      assertEquals(2, document.getNumberOfPages());
+      assertSame(image(document.getPage(0)), image(document.getPage(1)));
+      assertEquals(0, ResourceDeduplicator.deduplicate(document));
+    }
+  }
+
+  @Test
+  public void nothingShared() throws IOException {
+    byte[] merged = merge(PdfService.createPdfFile("<p>first</p>"),
+        PdfService.createPdfFile("<p>second</p>" + IMAGE));
+    try (PDDocument document = PDDocument.load(merged)) {
+      assertEquals(0, ResourceDeduplicator.deduplicate(document));
+    }
+  }
+}